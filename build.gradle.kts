@@ -21,6 +21,30 @@ java {
     }
 }
 
+// Classes for Java 21+, which go in the multi-release jar
+val java21: SourceSet by sourceSets.creating {
+    java.setSrcDirs(listOf("src/main/java21"))
+    compileClasspath += sourceSets.main.get().output
+}
+
+tasks.named<JavaCompile>(java21.compileJavaTaskName) {
+    javaCompiler.set(javaToolchains.compilerFor {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    })
+    options.release.set(21)
+    // The Vector API is still incubating
+    options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
+}
+
+tasks.named<Jar>("jar") {
+    into("META-INF/versions/21") {
+        from(java21.output)
+    }
+    manifest {
+        attributes("Multi-Release" to "true")
+    }
+}
+
 publishing {
     publications {
         create<MavenPublication>("maven") {
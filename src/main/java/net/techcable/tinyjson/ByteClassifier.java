@@ -0,0 +1,35 @@
+package net.techcable.tinyjson;
+
+/**
+ * Classifies 64 bytes of UTF-8 input at a time, for building a structural index.
+ *
+ * This is the portable implementation, using SWAR (see {@link TinyJson.Swar}).
+ * The multi-release jar replaces this class on Java 21+ with one using the (incubating) Vector API.
+ */
+final class ByteClassifier {
+    /*
+     * The masks produced by classify
+     */
+    static final int QUOTES = 0;
+    static final int BACKSLASHES = 1;
+    /**
+     * Brackets, colons and commas.
+     */
+    static final int STRUCTURALS = 2;
+    static final int WHITESPACE = 3;
+    static final int NON_ASCII = 4;
+    static final int MASKS = 5;
+
+    private ByteClassifier() {}
+
+    /**
+     * Classify the 64 bytes starting at the specified index, storing one bit per byte in each of the masks.
+     *
+     * @param bytes the input, with at least 64 bytes from the index
+     * @param index the index of the first byte
+     * @param masks the array of {@link #MASKS} masks to store the classification in
+     */
+    static void classify(byte[] bytes, int index, long[] masks) {
+        TinyJson.Swar.classify(bytes, index, masks);
+    }
+}
@@ -12,9 +12,32 @@
 package net.techcable.tinyjson;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
-import java.io.StringReader;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A tiny json parser.
@@ -30,8 +53,239 @@ public final class TinyJson {
      * @return the json value
      */
     public static TinyJson.JsonValue parseString(String text) {
+        return parseEntirely(new Parser(text));
+    }
+
+    /**
+     * Parse the specified UTF-8 bytes as json.
+     *
+     * @param bytes the bytes to parse
+     * @throws JsonException if an error occurs parsing json
+     * @return the json value
+     * @see #parseBytes(byte[], int, int)
+     */
+    public static TinyJson.JsonValue parseBytes(byte[] bytes) {
+        return parseBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parse the specified range of UTF-8 bytes as json.
+     *
+     * The bytes are tokenized directly,
+     * without decoding them into a {@link String} first.
+     *
+     * @param bytes the array containing the bytes
+     * @param off the offset of the first byte to parse
+     * @param len the number of bytes to parse
+     * @throws JsonException if an error occurs parsing json
+     * @return the json value
+     */
+    public static TinyJson.JsonValue parseBytes(byte[] bytes, int off, int len) {
+        return parseEntirely(new Parser(bytes, off, len));
+    }
+
+    /**
+     * Parse the remaining UTF-8 bytes in the specified buffer as json.
+     *
+     * Heap buffers are parsed directly from their backing array.
+     * Direct buffers are not parsed in place: they are copied into a reused heap block
+     * (see {@link Parser#Parser(ByteBuffer)}), one bounded chunk at a time.
+     * The position of the buffer is left unchanged.
+     *
+     * @param buffer the buffer to parse
+     * @throws JsonException if an error occurs parsing json
+     * @return the json value
+     */
+    public static TinyJson.JsonValue parseBuffer(ByteBuffer buffer) {
+        return parseEntirely(new Parser(buffer));
+    }
+
+    /**
+     * Parse the specified UTF-8 file as json.
+     *
+     * The file is memory mapped, letting the OS page cache do the work instead of read calls.
+     * The mapped region is not parsed in place: like a direct {@link ByteBuffer},
+     * it is copied into the parser's reused heap block one bounded chunk at a time,
+     * so the file is never read into the heap all at once.
+     * Files larger than 2 GB are mapped as multiple consecutive windows.
+     *
+     * @param path the file to parse
+     * @throws JsonException if an error occurs parsing json (or reading the file)
+     * @return the json value
+     */
+    public static TinyJson.JsonValue parseFile(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return parseEntirely(new Parser(channel));
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    /**
+     * Parse the specified range of UTF-8 bytes as a json array, in parallel.
+     *
+     * The array is split into chunks at element boundaries (by skipping over the elements),
+     * and each chunk is parsed as a separate task in the specified pool.
+     * Splitting continues while the first chunks are being parsed.
+     *
+     * @param bytes the array containing the bytes
+     * @param off the offset of the first byte to parse
+     * @param len the number of bytes to parse
+     * @param pool the pool to parse the chunks in
+     * @throws JsonException if an error occurs parsing json, or the value is not an array
+     * @return the parsed array
+     */
+    public static TinyJson.JsonArray parseArrayParallel(byte[] bytes, int off, int len, ForkJoinPool pool) {
+        Objects.checkFromIndexSize(off, len, bytes.length);
+        try {
+            return parseArrayParallel(
+                new Parser(bytes, off, len),
+                (start, end) -> new Parser(bytes, off + (int) start, (int) (end - start)),
+                pool
+            );
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    /**
+     * Parse the specified UTF-8 file as a json array, in parallel.
+     *
+     * The file is memory mapped (like {@link #parseFile(Path)}),
+     * and each chunk of elements is mapped separately by the task that parses it.
+     *
+     * @param path the file to parse
+     * @param pool the pool to parse the chunks in
+     * @throws JsonException if an error occurs parsing json (or reading the file), or the value is not an array
+     * @return the parsed array
+     * @see #parseArrayParallel(byte[], int, int, ForkJoinPool)
+     */
+    public static TinyJson.JsonArray parseFileParallel(Path path, ForkJoinPool pool) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return parseArrayParallel(
+                new Parser(channel),
+                (start, end) -> new Parser(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start)),
+                pool
+            );
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    /**
+     * Parse the specified range of UTF-8 bytes as <a href="https://jsonlines.org/">JSON Lines</a> (NDJSON),
+     * with one json value per line.
+     *
+     * The returned stream is parallel, splitting the input at newlines,
+     * but the values are still encountered in their original order.
+     * Each split reuses a single parser for all of its lines.
+     * Blank lines are ignored.
+     *
+     * The array must not be modified until the stream is consumed.
+     * Errors are thrown when the invalid line is reached by the stream.
+     *
+     * @param bytes the array containing the bytes
+     * @param off the offset of the first byte to parse
+     * @param len the number of bytes to parse
+     * @return a parallel stream of the values on each line
+     */
+    public static Stream<TinyJson.JsonValue> parseLines(byte[] bytes, int off, int len) {
+        Objects.checkFromIndexSize(off, len, bytes.length);
+        return StreamSupport.stream(new JsonLines(bytes, new SymbolTable(), off, off, off + len), true);
+    }
+
+    /**
+     * The minimum size of each chunk of elements parsed by {@link #parseArrayParallel}.
+     */
+    private static final int PARALLEL_CHUNK_SIZE = 1 << 20;
+
+    private static TinyJson.JsonArray parseArrayParallel(Parser splitter, ChunkSource source, ForkJoinPool pool) throws IOException {
+        Objects.requireNonNull(pool);
+        List<ForkJoinTask<List<JsonValue>>> tasks = new ArrayList<>();
+        SymbolTable symbols = new SymbolTable();
+        try {
+            splitter.beginArray();
+            while (splitter.hasNext()) {
+                // The separators have been consumed, so this is the start of the next element
+                long start = splitter.offset();
+                int count = 0;
+                do {
+                    splitter.skipValue();
+                    count++;
+                } while (splitter.offset() - start < PARALLEL_CHUNK_SIZE && splitter.hasNext());
+                tasks.add(pool.submit(new ArrayChunk(source, symbols, start, splitter.offset(), count)));
+            }
+            splitter.endArray();
+            splitter.expectFinished();
+        } catch (IOException | RuntimeException e) {
+            for (ForkJoinTask<?> task : tasks) {
+                task.cancel(false);
+            }
+            throw e;
+        }
+        List<List<JsonValue>> chunks = new ArrayList<>(tasks.size());
+        int size = 0;
+        for (ForkJoinTask<List<JsonValue>> task : tasks) {
+            List<JsonValue> chunk = task.join();
+            chunks.add(chunk);
+            size += chunk.size();
+        }
+        List<JsonValue> elements = new ArrayList<>(size);
+        for (List<JsonValue> chunk : chunks) {
+            elements.addAll(chunk);
+        }
+        return JsonArray.viewOf(elements);
+    }
+
+    /**
+     * Lazily parse the specified string as json.
+     *
+     * Objects and arrays only record where each child starts,
+     * and each child is parsed the first time it is accessed.
+     * Strings are only unescaped once their value is needed,
+     * and are serialized by copying their original (escaped) contents.
+     * Skipped children are only validated enough to find their end,
+     * so some syntax errors are not reported until the child is accessed.
+     *
+     * @param text the text to parse
+     * @throws JsonException if an error occurs parsing json
+     * @return the lazy json value
+     */
+    public static TinyJson.JsonValue parseLazy(String text) {
+        // Only the copy is kept, so the lazy values don't also retain the string
+        return parseLazy(new Parser(text.toCharArray()));
+    }
+
+    /**
+     * Lazily parse the specified range of UTF-8 bytes as json.
+     *
+     * The array is retained by the result, and must not be modified.
+     *
+     * @param bytes the array containing the bytes
+     * @param off the offset of the first byte to parse
+     * @param len the number of bytes to parse
+     * @throws JsonException if an error occurs parsing json
+     * @return the lazy json value
+     * @see #parseLazy(String)
+     */
+    public static TinyJson.JsonValue parseLazy(byte[] bytes, int off, int len) {
+        return parseLazy(new Parser(bytes, off, len));
+    }
+
+    private static TinyJson.JsonValue parseLazy(Parser parser) {
+        try {
+            LazySource source = new LazySource(parser);
+            parser.skipWhitespace();
+            JsonValue value = source.parseAt(parser.pos);
+            parser.expectFinished();
+            return value;
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    private static TinyJson.JsonValue parseEntirely(Parser parser) {
         try {
-            Parser parser = new Parser(new StringReader(text));
             JsonValue value = parser.parseValue();
             parser.expectFinished();
             return value;
@@ -55,6 +309,10 @@ public final class TinyJson {
             builder.append(i);
             return this;
         }
+        public Serializer serialize(long l) {
+            builder.append(l);
+            return this;
+        }
         public Serializer serialize(double d) {
             builder.append(d);
             return this;
@@ -68,9 +326,10 @@ public final class TinyJson {
             return this;
         }
         private void escapeCharInto(char c) {
-            if (c >= 32 && c < 127) {
+            if (c >= 32 && c < 127 && c != '"' && c != '\\') {
                 // Printable ASCII
                 builder.append(c);
+                return;
             }
             builder.append('\\');
             switch (c) {
@@ -83,11 +342,17 @@ public final class TinyJson {
                     break;
                 case '\n':
                     builder.append('n');
+                    break;
                 case '\r':
                     builder.append('r');
                     break;
                 default:
-                    builder.append(Integer.toHexString(c));
+                    builder.append('u');
+                    String hex = Integer.toHexString(c);
+                    for (int i = hex.length(); i < 4; i++) {
+                        builder.append('0');
+                    }
+                    builder.append(hex);
                     break;
             }
         }
@@ -126,6 +391,7 @@ public final class TinyJson {
             return this;
         }
         /* package */ void serializePrimitive0(JsonPrimitive prim) {
+            if (prim.raw != null && prim.raw.appendVerbatim(this.builder)) return;
             Object value = prim.getValueAsObject();
             if (value instanceof String) {
                 this.serialize((String) value);
@@ -149,7 +415,7 @@ public final class TinyJson {
             } else {
                 TinyJson.Serializer ser = TinyJson.Serializer.simple();
                 value.serializeJson(ser);
-                return value.toString();
+                return ser.toString();
             }
         }
     }
@@ -172,26 +438,81 @@ public final class TinyJson {
         public abstract boolean equals(Object other);
     }
     public static final class JsonPrimitive extends JsonValue {
+        /**
+         * The value, or null if this is a raw string.
+         */
         private final Object value;
+        /**
+         * The raw contents of a string from the input, or null if this isn't a raw string.
+         */
+        private final RawString raw;
         private JsonPrimitive(Object value) {
             this.value = value;
+            this.raw = null;
+        }
+        private JsonPrimitive(RawString raw) {
+            this.value = null;
+            this.raw = raw;
         }
 
         /**
          * Get the value of this primitive as an untyped object
+         *
+         * Strings from {@link TinyJson#parseLazy(String)} are only unescaped the first time this is called.
          */
         public Object getValueAsObject() {
-            return this.value;
+            return this.raw != null ? this.raw.decoded() : this.value;
+        }
+
+        /**
+         * Get the value of this primitive as a long, if it is an integer that fits.
+         *
+         * @throws ArithmeticException if the number isn't an integer, or doesn't fit in a long
+         * @throws IllegalStateException if this isn't a number
+         * @return the value
+         */
+        public long getAsLong() {
+            Object value = this.getValueAsObject();
+            if (value instanceof Integer || value instanceof Long) {
+                return ((Number) value).longValue();
+            }
+            return getAsBigDecimal().longValueExact();
+        }
+
+        /**
+         * Get the value of this primitive as a {@link BigDecimal}.
+         *
+         * Integers and decimals are exact. Doubles are converted from their shortest
+         * decimal representation (like {@link Double#toString(double)}), not their exact binary value,
+         * so a parsed double gives back the number that was written.
+         *
+         * @throws NumberFormatException if the number is infinite or NaN
+         * @throws IllegalStateException if this isn't a number
+         * @return the value
+         */
+        public BigDecimal getAsBigDecimal() {
+            Object value = this.getValueAsObject();
+            if (value instanceof BigDecimal) {
+                return (BigDecimal) value;
+            } else if (value instanceof BigInteger) {
+                return new BigDecimal((BigInteger) value);
+            } else if (value instanceof Double) {
+                return BigDecimal.valueOf((Double) value);
+            } else if (value instanceof Number) {
+                return BigDecimal.valueOf(((Number) value).longValue());
+            } else {
+                throw new IllegalStateException("Expected a number, but got " + this);
+            }
         }
 
         @Override
         public int hashCode() {
-            return Objects.hashCode(this.value);
+            return Objects.hashCode(this.getValueAsObject());
         }
 
         @Override
         public String toString() {
-            if (this.value instanceof String) {
+            if (this.getValueAsObject() instanceof String) {
                 return super.toString(); // Use serializer
             } else {
                 return Objects.toString(value);
@@ -208,9 +529,10 @@ public final class TinyJson {
         public boolean equals(Object obj) {
             if (this == obj) return true;
             if (obj instanceof JsonPrimitive) {
-                Object otherValue = ((JsonPrimitive) obj).value;
-                return this.value == otherValue ||
-                    Objects.equals(this.value, otherValue);
+                Object value = this.getValueAsObject();
+                Object otherValue = ((JsonPrimitive) obj).getValueAsObject();
+                return value == otherValue ||
+                    Objects.equals(value, otherValue);
             } else {
                 return false;
             }
@@ -225,6 +547,25 @@ public final class TinyJson {
         public static JsonPrimitive of(int i) {
             return new JsonPrimitive(i);
         }
+        /**
+         * Create a primitive for the specified integer.
+         *
+         * Integers that fit in an int are stored as one, so they are equal to {@link #of(int)}.
+         */
+        public static JsonPrimitive of(long l) {
+            return (int) l == l ? of((int) l) : new JsonPrimitive(l);
+        }
+        /**
+         * Create a primitive for the specified integer.
+         *
+         * Integers that fit in a long are stored as one, so they are equal to {@link #of(long)}.
+         */
+        public static JsonPrimitive of(BigInteger i) {
+            return i.bitLength() < 64 ? of(i.longValue()) : new JsonPrimitive(i);
+        }
+        public static JsonPrimitive of(BigDecimal d) {
+            return new JsonPrimitive(Objects.requireNonNull(d));
+        }
         public static JsonPrimitive of(double d) {
             return new JsonPrimitive(d);
         }
@@ -251,6 +592,31 @@ public final class TinyJson {
             return EMPTY;
         }
 
+        /**
+         * Get the value of the entry with the specified key.
+         *
+         * @param key the key to lookup
+         * @return the value, or null if there is no such entry
+         */
+        public JsonValue get(String key) {
+            return this.entries.get(key);
+        }
+
+        public int size() {
+            return this.entries.size();
+        }
+
+        /**
+         * Return the entries of this object, in order.
+         *
+         * This is the underlying map, not a copy.
+         *
+         * @return the entries of this object
+         */
+        public Map<String, JsonValue> asMap() {
+            return this.entries;
+        }
+
         @Override
         public void serializeJson(TinyJson.Serializer ser) {
             ser.serializeObject(this.entries);
@@ -303,6 +669,32 @@ public final class TinyJson {
 
         private static final JsonArray EMPTY = viewOf(Collections.emptyList());
 
+        /**
+         * Get the element at the specified index.
+         *
+         * @param index the index of the element
+         * @throws IndexOutOfBoundsException if the index is out of bounds
+         * @return the element
+         */
+        public JsonValue get(int index) {
+            return this.elements.get(index);
+        }
+
+        public int size() {
+            return this.elements.size();
+        }
+
+        /**
+         * Return the elements of this array.
+         *
+         * This is the underlying list, not a copy.
+         *
+         * @return the elements of this array
+         */
+        public List<JsonValue> asList() {
+            return this.elements;
+        }
+
         @Override
         public void serializeJson(TinyJson.Serializer ser) {
             ser.serializeArray(this.elements);
@@ -353,27 +745,171 @@ public final class TinyJson {
         }
     }
 
+    /**
+     * The type of a token in the token stream of a {@link Parser}.
+     */
+    public enum JsonToken {
+        BEGIN_OBJECT,
+        END_OBJECT,
+        BEGIN_ARRAY,
+        END_ARRAY,
+        /**
+         * The name of an object entry
+         */
+        NAME,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        /**
+         * The end of the input
+         */
+        END_DOCUMENT
+    }
+
     /**
      * Raw interface to the underlying parser.
      *
-     * Parses using recursive decent with one token of lookahead (LL(1)).
-     * In addition to {@link JsonSyntaxException},
-     * it may also throw {@link StackOverflowError} and {@link OutOfMemoryError}.
+     * Parses with one token of lookahead (LL(1)), keeping the open objects and arrays
+     * on an explicit stack instead of recursing. Nesting deeper than {@link #setMaxDepth(int)}
+     * throws a {@link JsonSyntaxException}, so even malicious input can't cause a {@link StackOverflowError}.
+     *
+     * Input is pulled from the underlying reader in large blocks,
+     * so the scanning loops run over a local array instead of calling {@link Reader#read()}
+     * once per character. In-memory text should be given directly as a {@link CharSequence},
+     * instead of going through a (synchronized) {@link java.io.StringReader}.
+     *
+     * UTF-8 input is tokenized directly as bytes. In that case,
+     * error offsets are in bytes instead of characters.
+     *
+     * Besides parsing entire values, the input can be walked as a stream of tokens
+     * (see {@link #peek()}), without building any {@link JsonValue}s.
+     * The two styles can be mixed, for example to parse only the value of a specific field.
      */
     public static final class Parser {
+        /**
+         * The initial size of the input block.
+         *
+         * The block only grows beyond this when a single token is larger than the whole block.
+         */
+        private static final int BLOCK_SIZE = 8192;
         private final Reader reader;
+        /**
+         * Where to refill the {@link #bytes} block from,
+         * or null if all the bytes are already in the block.
+         */
+        private final InputStream input;
+        /**
+         * The input text, if it is a {@link String}.
+         *
+         * Strings without escapes can then be sliced directly from the input.
+         */
+        private final String text;
         /**
          * Reuse the underlying buffer, to avoid excessive allocation.
          */
         private final StringBuilder buffer = new StringBuilder();
-        private long offset = 0;
         /**
-         * One character of pushback.
+         * The current block of input.
+         *
+         * Only the characters in the range {@code [pos, limit)} have not been consumed yet.
+         * "Pushing back" a character is just decrementing {@link #pos}.
+         */
+        private char[] block;
+        /**
+         * The current block of input, when parsing UTF-8 bytes.
+         *
+         * Exactly one of {@link #block} and {@link #bytes} is non-null.
+         * All json syntax is ASCII, so only string contents ever need to be decoded.
+         */
+        private byte[] bytes;
+        private int pos = 0;
+        private int limit = 0;
+        /**
+         * The offset of {@code block[0]} from the start of the input.
+         */
+        private long blockOffset = 0;
+        /**
+         * The start of a token that must be preserved when the block is refilled,
+         * or {@code -1} if there is none.
+         */
+        private int mark = -1;
+        private boolean eof = false;
+        /*
+         * Token stream state
+         */
+        private static final int EMPTY_DOCUMENT = 0;
+        private static final int NONEMPTY_DOCUMENT = 1;
+        private static final int EMPTY_OBJECT = 2;
+        /**
+         * Inside an object, after a name but before its value.
+         */
+        private static final int DANGLING_NAME = 3;
+        private static final int NONEMPTY_OBJECT = 4;
+        private static final int EMPTY_ARRAY = 5;
+        private static final int NONEMPTY_ARRAY = 6;
+        /**
+         * A document containing any number of consecutive values.
+         */
+        private static final int VALUE_STREAM = 7;
+        /**
+         * The stack of objects and arrays opened by the token stream.
+         */
+        private int[] scopes = {EMPTY_DOCUMENT, 0, 0, 0, 0, 0, 0, 0};
+        private int scopeDepth = 1;
+        /**
+         * The default limit on the nesting of objects and arrays.
+         */
+        public static final int DEFAULT_MAX_DEPTH = 1000;
+        private int maxDepth = DEFAULT_MAX_DEPTH;
+        /**
+         * If non-integral numbers are parsed into a {@link BigDecimal} instead of a double.
+         */
+        private boolean exactDecimals;
+        /**
+         * The structural index of the input, or null if it is scanned directly (the default).
+         *
+         * This is only used for UTF-8 input that is entirely in memory.
+         */
+        private StructuralIndex index;
+        /**
+         * The classification of each 64 bytes, when skipping containers.
+         */
+        private final long[] masks = new long[ByteClassifier.MASKS];
+        /*
+         * Stack of the objects and arrays being built by readValue()
          *
-         * We do not use {@link java.io.PushbackReader} because we only ever need
-         * one character of push back (and want to avoid double buffering).
+         * Each container is either a Map or List, with the key of the current entry for a Map.
+         */
+        private Object[] containers = new Object[8];
+        private String[] keys = new String[8];
+        /**
+         * The token found by {@link #peek()}, or null if it has not been called.
+         */
+        private JsonToken peeked;
+        /*
+         * Number scanning results
+         */
+        private static final int LONG_NUMBER = 0;
+        private static final int BIG_INTEGER = 1;
+        private static final int FLOAT_NUMBER = 2;
+        private long numberValue;
+        private int numberStart;
+        /*
+         * UTF-8 string scanning results
+         */
+        private int stringStart;
+        private boolean stringEscaped;
+        private boolean stringAscii;
+        private final CharView view = new CharView();
+        /**
+         * The table used to intern object names, or null to allocate every name separately.
          */
-        private int pushBack = -1;
+        private SymbolTable symbols = new SymbolTable();
+        /**
+         * The cache used to share repeated string values, or null to allocate every value separately.
+         */
+        private StringCache strings;
 
         private void clearBuffer() {
             this.buffer.setLength(0);
@@ -385,85 +921,418 @@ public final class TinyJson {
          * @param reader the reader to wrap
          */
         public Parser(Reader reader) {
+            this(reader, BLOCK_SIZE, null);
+        }
+
+        /**
+         * Construct a new parser over the specified text.
+         *
+         * The text is copied into the block in bulk (using {@link String#getChars} where possible),
+         * so there is no lock or virtual call per character.
+         * If the text is a {@link String}, strings without escapes are
+         * sliced directly from it with {@link String#substring}.
+         *
+         * @param text the text to parse
+         */
+        public Parser(CharSequence text) {
+            this(
+                new CharSequenceInput(text),
+                // Small inputs fit entirely in one block, without wasting space
+                Math.max(Math.min(text.length(), BLOCK_SIZE), 16),
+                text instanceof String ? (String) text : null
+            );
+        }
+
+        private Parser(Reader reader, int blockSize, String text) {
             this.reader = Objects.requireNonNull(reader);
+            this.input = null;
+            this.text = text;
+            this.block = new char[blockSize];
         }
 
-        public void expectEnd() throws IOException {
-            int c = readChar();
-            if (c >= 0) throw unexpectedChar((char) c, "Expected EOF");
+        /**
+         * Construct a parser over all of the specified characters, which are used directly.
+         */
+        private Parser(char[] chars) {
+            this.reader = null;
+            this.input = null;
+            this.text = null;
+            this.block = chars;
+            this.limit = chars.length;
+            this.eof = true; // Everything is already in the block
         }
-        public JsonValue parseValue() throws IOException {
-            skipWhitespace();
-            int res = expectChar();
-            switch (res) {
-                case '{':
-                    return parseObject();
-                case '[':
-                    return parseArray();
-                default:
-                    return parsePrimitive(true);
-            }
+
+        /**
+         * Construct a new parser over the specified range of UTF-8 bytes.
+         *
+         * The array is used directly, without copying it.
+         *
+         * @param bytes the array containing the bytes
+         * @param off the offset of the first byte to parse
+         * @param len the number of bytes to parse
+         */
+        public Parser(byte[] bytes, int off, int len) {
+            Objects.checkFromIndexSize(off, len, bytes.length);
+            this.reader = null;
+            this.input = null;
+            this.text = null;
+            this.bytes = bytes;
+            this.pos = off;
+            this.limit = off + len;
+            this.blockOffset = -off;
+            this.eof = true; // Everything is already in the block
         }
-        public JsonObject parseObject() throws IOException {
-            skipWhitespace();
-            expect('{');
-            skipWhitespace();
-            Map<String, JsonValue> res = new LinkedHashMap<>();
-            while (true) {
-                String key = jsonString();
-                skipWhitespace();
-                expect(':');
-                JsonValue value = parseValue();
-                skipWhitespace();
-                char c = expectChar();
-                skipWhitespace();
-                res.put(key, value);
-                if (c != ',') {
-                    expect('}');
-                    break;
-                }
-            }
-            return JsonObject.viewOf(res);
+
+        private Parser(InputStream input) {
+            this.reader = null;
+            this.input = Objects.requireNonNull(input);
+            this.text = null;
+            this.bytes = new byte[BLOCK_SIZE];
         }
-        public JsonArray parseArray() throws IOException {
-            skipWhitespace();
-            expect('[');
-            List<JsonValue> elements = new ArrayList<>();
-            elementsLoop: while (true) {
-                JsonValue value = parseValue();
-                elements.add(value);
-                skipWhitespace();
-                char next = expectChar();
-                switch (next) {
-                    case ',':
-                        break; // break switch
-                    case ']':
-                        break elementsLoop;
-                    default:
-                        throw unexpectedChar(next, "Expected either `,` or `]`");
-                }
+
+        /**
+         * Construct a new parser over the specified UTF-8 file.
+         *
+         * The file is memory mapped and copied into the block a chunk at a time (see {@link TinyJson#parseFile(Path)}),
+         * and the channel must stay open while it is parsed.
+         *
+         * @param channel the file to parse, from its start
+         * @throws IOException if the file can't be mapped
+         */
+        public Parser(FileChannel channel) throws IOException {
+            this(new MappedFileInput(channel));
+        }
+
+        /**
+         * Construct a new parser over the remaining UTF-8 bytes of the specified buffer.
+         *
+         * If the buffer is backed by an accessible array, that array is used directly.
+         * Otherwise (for direct buffers), every byte is still copied once: the contents are
+         * copied in bulk into the parser's heap block, one block-sized chunk at a time.
+         * The parser only scans (and decodes strings from) byte arrays, so this bounded copy
+         * is what lets direct buffers share the same parsing code. The block is reused,
+         * so it produces no garbage per chunk, and the entire buffer is never copied to the heap at once.
+         *
+         * The position of the buffer is left unchanged.
+         *
+         * @param buffer the buffer to parse
+         */
+        public Parser(ByteBuffer buffer) {
+            this.reader = null;
+            this.text = null;
+            if (buffer.hasArray()) {
+                this.input = null;
+                this.bytes = buffer.array();
+                this.pos = buffer.arrayOffset() + buffer.position();
+                this.limit = this.pos + buffer.remaining();
+                this.blockOffset = -this.pos;
+                this.eof = true;
+            } else {
+                this.input = new ByteBufferInput(buffer);
+                this.bytes = new byte[BLOCK_SIZE];
             }
-            return JsonArray.viewOf(elements);
         }
-        public JsonPrimitive parsePrimitive() throws IOException {
-            return parsePrimitive(false);
+
+        /**
+         * Set the maximum nesting depth of objects and arrays.
+         *
+         * This applies to both the token stream and the parsed values,
+         * counting every container that is open at once (from the start of the document).
+         *
+         * @param maxDepth the maximum depth
+         * @throws IllegalArgumentException if the depth is not positive
+         * @return this parser
+         */
+        public Parser setMaxDepth(int maxDepth) {
+            if (maxDepth <= 0) throw new IllegalArgumentException("Invalid max depth: " + maxDepth);
+            this.maxDepth = maxDepth;
+            return this;
+        }
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+        /**
+         * Set whether numbers with a fraction or exponent are parsed into an exact {@link BigDecimal},
+         * instead of the nearest double.
+         *
+         * Integers are always exact, regardless of this setting.
+         *
+         * @param exactDecimals whether to parse exact decimals
+         * @return this parser
+         */
+        public Parser setExactDecimals(boolean exactDecimals) {
+            this.exactDecimals = exactDecimals;
+            return this;
+        }
+        /**
+         * Set whether to parse with the help of a structural index, like the first stage of simdjson.
+         *
+         * The index is built by an extra pass over each window of the input, classifying 64 bytes at a time,
+         * and lets the parser jump straight between tokens and to the ends of strings.
+         * It only applies to UTF-8 input that is entirely in memory (byte arrays and heap buffers).
+         *
+         * Classification uses the Vector API on Java 21+ (from the multi-release jar),
+         * if the incubating module is added with {@code --add-modules jdk.incubator.vector}.
+         *
+         * The index is disabled by default, since scanning the input directly is still faster
+         * for the documents we've measured, even with vectorized classification.
+         *
+         * @param enabled whether to use the structural index
+         * @return this parser
+         */
+        public Parser setStructuralIndex(boolean enabled) {
+            if (!enabled) {
+                this.index = null;
+            } else if (this.index == null && this.bytes != null && this.input == null) {
+                this.index = new StructuralIndex();
+            }
+            return this;
+        }
+        /**
+         * Set the table used to intern the names of object entries.
+         *
+         * By default, each parser has its own table.
+         * Sharing a table between parsers (even on different threads)
+         * lets them reuse the same name strings.
+         *
+         * @param symbols the table to use, or null to allocate a new string for every name
+         * @return this parser
+         */
+        public Parser setSymbolTable(SymbolTable symbols) {
+            this.symbols = symbols;
+            return this;
+        }
+        /**
+         * Set the cache used to share repeated string values.
+         *
+         * By default, there is no cache and every string value is allocated separately.
+         * Like a {@link SymbolTable}, a cache can be shared between parsers (even on different threads).
+         *
+         * @param strings the cache to use, or null to allocate every string value separately
+         * @return this parser
+         */
+        public Parser setStringCache(StringCache strings) {
+            this.strings = strings;
+            return this;
+        }
+
+        /**
+         * The position of a {@link Parser} in the token stream,
+         * which can be saved and later restored over the same input.
+         *
+         * This records the offset of the next token and the stack of open objects and arrays,
+         * but none of the values that were already parsed.
+         */
+        public static final class Checkpoint implements Serializable {
+            private static final long serialVersionUID = 1L;
+            private final long offset;
+            private final boolean utf8;
+            private final int[] scopes;
+            private final JsonToken peeked;
+
+            private Checkpoint(long offset, boolean utf8, int[] scopes, JsonToken peeked) {
+                this.offset = offset;
+                this.utf8 = utf8;
+                this.scopes = scopes;
+                this.peeked = peeked;
+            }
+
+            /**
+             * The offset in the input, in bytes for UTF-8 input (otherwise in chars).
+             *
+             * @return the offset
+             */
+            public long getOffset() {
+                return offset;
+            }
+
+            /**
+             * The number of objects and arrays open at the checkpoint.
+             *
+             * @return the depth
+             */
+            public int getDepth() {
+                return scopes.length - 1;
+            }
+        }
+
+        /**
+         * Save the current position in the token stream.
+         *
+         * For example, a checkpoint can be taken every N elements of a huge array,
+         * and after a crash, a new parser can {@link #restore(Checkpoint)} it
+         * and continue with the following element.
+         *
+         * @return a checkpoint of the current position
+         */
+        public Checkpoint checkpoint() {
+            return new Checkpoint(
+                offset(),
+                bytes != null,
+                Arrays.copyOf(this.scopes, this.scopeDepth),
+                this.peeked
+            );
+        }
+
+        /**
+         * Restore a checkpoint taken by a parser over the same input.
+         *
+         * This must be called before anything is parsed.
+         * Everything before the checkpoint is skipped without being parsed,
+         * which is just moving the position for in-memory input, strings and mapped files.
+         * Other readers and streams are skipped through.
+         *
+         * @param checkpoint the checkpoint to restore
+         * @throws IllegalStateException if the parser has already started parsing
+         * @throws IllegalArgumentException if the checkpoint is for a different kind of input, or past its end
+         */
+        public void restore(Checkpoint checkpoint) throws IOException {
+            if (offset() != 0 || this.scopeDepth != 1 || this.scopes[0] != EMPTY_DOCUMENT || this.peeked != null) {
+                throw new IllegalStateException("Can only restore a checkpoint before parsing");
+            }
+            if (checkpoint.utf8 != (bytes != null)) {
+                throw new IllegalArgumentException("Checkpoint offsets are in " + (checkpoint.utf8 ? "bytes" : "chars"));
+            }
+            int[] scopes = checkpoint.scopes;
+            if (scopes.length == 0 || checkpoint.offset < 0) throw new IllegalArgumentException("Invalid checkpoint");
+            for (int i = 0; i < scopes.length; i++) {
+                boolean document = scopes[i] <= NONEMPTY_DOCUMENT || scopes[i] == VALUE_STREAM;
+                if (document != (i == 0) || scopes[i] < 0 || scopes[i] > VALUE_STREAM) {
+                    throw new IllegalArgumentException("Invalid checkpoint");
+                }
+            }
+            long remaining = checkpoint.offset;
+            int inBlock = (int) Math.min(remaining, this.limit - this.pos);
+            this.pos += inBlock;
+            remaining -= inBlock;
+            if (remaining > 0) {
+                // Discard the block, then skip the underlying input
+                this.blockOffset += this.limit;
+                this.pos = this.limit = 0;
+                while (remaining > 0) {
+                    long skipped = eof ? 0 : bytes != null ? input.skip(remaining) : reader.skip(remaining);
+                    if (skipped <= 0) {
+                        // Either EOF, or the source can't skip right now
+                        if (eof || (bytes != null ? input.read() : reader.read()) < 0) {
+                            throw new IllegalArgumentException("Checkpoint is past the end of the input");
+                        }
+                        skipped = 1;
+                    }
+                    this.blockOffset += skipped;
+                    remaining -= skipped;
+                }
+            }
+            this.scopes = Arrays.copyOf(scopes, Math.max(scopes.length, 8));
+            this.scopeDepth = scopes.length;
+            this.peeked = checkpoint.peeked;
+        }
+        public void expectEnd() throws IOException {
+            int c = readChar();
+            if (c >= 0) throw unexpectedChar((char) c, "Expected EOF");
+        }
+        public JsonValue parseValue() throws IOException {
+            beginValue();
+            return readValue();
+        }
+        public JsonObject parseObject() throws IOException {
+            beginValue();
+            return readObject();
+        }
+        public JsonArray parseArray() throws IOException {
+            beginValue();
+            return readArray();
+        }
+        public JsonPrimitive parsePrimitive() throws IOException {
+            beginValue();
+            return readPrimitive(false);
         }
-        private JsonPrimitive parsePrimitive(boolean expectedAnyValue) throws IOException {
+
+        //
+        // Token stream
+        //
+
+        /**
+         * Peek at the type of the next token, without consuming it.
+         *
+         * Any separators before the token (like `,` and `:`) are consumed.
+         *
+         * @return the type of the next token
+         * @throws JsonSyntaxException if the next token is invalid
+         */
+        public JsonToken peek() throws IOException {
+            JsonToken token = this.peeked;
+            if (token == null) {
+                token = this.peeked = doPeek();
+            }
+            return token;
+        }
+        private JsonToken doPeek() throws IOException {
             skipWhitespace();
-            char c = expectChar();
+            int scope = this.scopes[this.scopeDepth - 1];
+            switch (scope) {
+                case EMPTY_DOCUMENT:
+                    this.scopes[this.scopeDepth - 1] = NONEMPTY_DOCUMENT;
+                    break;
+                case NONEMPTY_DOCUMENT: {
+                    int c = peekChar();
+                    if (c < 0) return JsonToken.END_DOCUMENT;
+                    pos++;
+                    throw unexpectedChar((char) c, "Expected EOF");
+                }
+                case VALUE_STREAM:
+                    if (peekChar() < 0) return JsonToken.END_DOCUMENT;
+                    break;
+                case EMPTY_ARRAY:
+                    if (peekChar() == ']') return JsonToken.END_ARRAY;
+                    this.scopes[this.scopeDepth - 1] = NONEMPTY_ARRAY;
+                    break;
+                case NONEMPTY_ARRAY: {
+                    char c = expectPeekChar();
+                    if (c == ']') return JsonToken.END_ARRAY;
+                    pos++;
+                    if (c != ',') throw unexpectedChar(c, "Expected either `,` or `]`");
+                    skipWhitespace();
+                    break;
+                }
+                case EMPTY_OBJECT:
+                case NONEMPTY_OBJECT: {
+                    char c = expectPeekChar();
+                    if (c == '}') return JsonToken.END_OBJECT;
+                    if (scope == NONEMPTY_OBJECT) {
+                        pos++;
+                        if (c != ',') throw unexpectedChar(c, "Expected either `,` or `}`");
+                        skipWhitespace();
+                        c = expectPeekChar();
+                    }
+                    if (c != '"') {
+                        pos++;
+                        throw unexpectedChar(c, "Expected a name");
+                    }
+                    this.scopes[this.scopeDepth - 1] = DANGLING_NAME;
+                    return JsonToken.NAME;
+                }
+                case DANGLING_NAME:
+                    expect(':');
+                    this.scopes[this.scopeDepth - 1] = NONEMPTY_OBJECT;
+                    skipWhitespace();
+                    break;
+                default:
+                    throw new AssertionError(scope);
+            }
+            // The next token is a value
+            char c = expectPeekChar();
             switch (c) {
+                case '{':
+                    return JsonToken.BEGIN_OBJECT;
+                case '[':
+                    return JsonToken.BEGIN_ARRAY;
                 case '"':
-                    pushBack(c);
-                    return JsonPrimitive.of(jsonString());
+                    return JsonToken.STRING;
                 case 't':
-                    expectNamedConstant(c, "rue");
-                    return JsonPrimitive.of(true);
                 case 'f':
-                    expectNamedConstant(c, "alse");
-                    return JsonPrimitive.of(false);
+                    return JsonToken.BOOLEAN;
                 case 'n':
-                    expectNamedConstant(c, "ull");
-                    return JsonPrimitive.NULL;
+                    return JsonToken.NULL;
                 case '-':
                 case '0':
                 case '1':
@@ -473,237 +1342,3259 @@ public final class TinyJson {
                 case '5':
                 case '6':
                 case '7':
+                case '8':
                 case '9':
-                    pushBack(c);
-                    return parseNumber();
+                    return JsonToken.NUMBER;
                 default:
-                    throw unexpectedChar(c, expectedAnyValue ? "Expected a json value" : "Expected a primitive");
+                    pos++;
+                    throw unexpectedChar(c, "Expected a json value");
             }
         }
-        private JsonPrimitive parseNumber() throws IOException {
-            clearBuffer();
-            boolean negative = false;
-            /*
-             * Need to make a decision here, in order to decide between int/double
-             *
-             * Also, I believe we only accept a subset of numbers that Integer.parseInt does.
-             */
-            int next = expectChar();
-            final int primaryVal;
-            if (next == '-') {
-                negative = true;
-                next = expectChar();
-            }
-            if (next == '0') {
-                next = expectChar();
-                if (isAsciiDigit(next)) {
-                    throw genericError("JSON does not permit leading zeroes for numbers");
-                } else {
-                    pushBack(next);
-                }
-                primaryVal = 0;
-            } else {
-                pushBack(next);
-                primaryVal = parseRawUnsignedInteger();
-            }
-            OptionalInt fraction = OptionalInt.empty();
-            OptionalInt exponent = OptionalInt.empty();
-            next = readChar();
-            partLoop: while (true) {
-                switch (next) {
-                    case '.':
-                        if (fraction.isPresent()) throw genericError("Duplicate fraction for number");
-                        /*
-                         * TODO: Technically speaking we should only validate this, not parse it
-                         *
-                         * Parsing here could theoretically throw an OverflowError even if Double.parseString
-                         * is able to handle it
-                         */
-                        fraction = OptionalInt.of(parseRawUnsignedInteger());
-                        next = readChar();
-                        break;
-                    case 'e':
-                    case 'E':
-                        if (exponent.isPresent()) throw genericError("Duplicate exponent for number");
-                        /*
-                         * Don't really need to worry about OverflowError here because exponents > 4 billion
-                         * are obviously invalid.
-                         */
-                        exponent = OptionalInt.of(parseRawUnsignedInteger());
-                        next = readChar();
-                        break;
-                    default:
-                        pushBack(next);
-                    case -1:
-                        break partLoop;
-                }
-            }
-            if (fraction.isEmpty() && exponent.isEmpty()) {
-                return JsonPrimitive.of(negative ? -primaryVal : primaryVal);
-            } else {
-                clearBuffer();
-                if (negative) this.buffer.append('-');
-                this.buffer.append(primaryVal);
-                if (fraction.isPresent()) {
-                    this.buffer.append('.');
-                    this.buffer.append(fraction.getAsInt());
-                }
-                if (exponent.isPresent()) {
-                    this.buffer.append('e');
-                    this.buffer.append(exponent.getAsInt());
-                }
-                // Floating point parsing is *REALLY* hard, so I get a pass here
-                return JsonPrimitive.of(Double.parseDouble(buffer.toString()));
+        /**
+         * Consume the next token, discarding its value.
+         *
+         * @return the type of the consumed token
+         * @throws JsonSyntaxException if the next token is invalid
+         */
+        public JsonToken nextToken() throws IOException {
+            JsonToken token = peek();
+            switch (token) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    break;
+                case NAME:
+                    this.peeked = null;
+                    pos++; // opening quote
+                    skipString();
+                    break;
+                case END_DOCUMENT:
+                    break;
+                default:
+                    skipValue();
+                    break;
             }
+            return token;
         }
-        private static boolean isAsciiDigit(int c) {
-            return c >= '0' && c <= '9';
-        }
-        private int parseRawUnsignedInteger() throws IOException {
-            int c = expectChar();
-            int res = 0;
-            if (!isAsciiDigit(c)) throw unexpectedChar((char) c, "Invalid digit while parsing integer");
-            try {
-                do {
-                    /*
-                     * This should be noticeably faster than Integer.parseInt because:
-                     * 1. It only supports ASCII characters, avoiding Character.digitValue
-                     * 2. addExact/multiplyExact are VM intrinsics
-                     * 3. It avoids buffering and works in a single pass (unlike double parsing)
-                     */
-                    res = Math.multiplyExact(res, 10);
-                    res = Math.addExact(res, (c - '0'));
-                    c = readChar();
-                } while (c >= 0 && isAsciiDigit(c));
-                return res;
-            } catch (ArithmeticException e) {
-                throw genericError("Integer is too large");
-            }
+        /**
+         * Skip over the next value, without parsing it.
+         *
+         * Objects and arrays are skipped by scanning for the matching bracket,
+         * and strings by scanning for the closing quote. Escapes are never decoded,
+         * and only the validation needed to find the end of the value is done.
+         *
+         * @throws JsonSyntaxException if the next token is not a value, or the input ends too early
+         */
+        public void skipValue() throws IOException {
+            beginValue();
+            skipRawValue();
         }
-        private void expectNamedConstant(char first, String remaining) throws IOException {
-            String actualRemaining = readChars(remaining.length());
-            if (!actualRemaining.equals(remaining)) {
-                throw genericError("Expected `" + first + remaining + "`, but got `" + first + actualRemaining + "`");
+        private void skipRawValue() throws IOException {
+            skipWhitespace();
+            char c = expectPeekChar();
+            switch (c) {
+                case '{':
+                case '[':
+                    skipContainer();
+                    break;
+                case '"':
+                    pos++; // opening quote
+                    skipString();
+                    break;
+                case 't':
+                case 'f':
+                case 'n':
+                    // Literals are cached, so this doesn't allocate
+                    readPrimitive(true);
+                    break;
+                default:
+                    if (c != '-' && !isAsciiDigit(c)) {
+                        pos++;
+                        throw unexpectedChar(c, "Expected a json value");
+                    }
+                    scanNumber();
+                    break;
             }
         }
-        private static boolean isWhitespace(char c) {
-            return c == ' ' | c == '\n' | c == '\r' | c == '\t';
-        }
-        public void skipWhitespace() throws IOException {
-            if (pushBack >= 0) {
-                if (isWhitespace((char) pushBack)) {
-                    readChar(); // consume pushback
-                } else {
-                    return; // not whitespace ;)
+        /**
+         * Skip the rest of a string, without decoding it.
+         */
+        private void skipString() throws IOException {
+            if (this.index != null) {
+                int end = this.index.stringEnd(this.bytes, this.pos - 1, this.limit);
+                if (end != StructuralIndex.NOT_FOUND) {
+                    this.pos = StructuralIndex.offset(end) + 1;
+                    return;
                 }
             }
-            char c;
+            boolean escaped = false;
             do {
-                c = expectChar();
-            } while (isWhitespace(c));
-            pushBack(c);
-        }
-        public String jsonString() throws IOException {
-            skipWhitespace();
-            this.buffer.setLength(0); // clear buffer
-            this.expect('"');
-            int c;
-            while ((c = expectChar()) != '"') {
-                if (c == '\\') {
-                    this.buffer.append(readEscapedChar());
+                int i = this.pos;
+                final int limit = this.limit;
+                if (bytes != null) {
+                    final byte[] bytes = this.bytes;
+                    while (i < limit) {
+                        if (!escaped) {
+                            // Skip 8 bytes at a time, up to the next quote or backslash
+                            while (i + 8 <= limit) {
+                                long found = Swar.quotesOrBackslashes(Swar.read(bytes, i));
+                                if (found != 0) {
+                                    i += Swar.firstByte(found);
+                                    break;
+                                }
+                                i += 8;
+                            }
+                            if (i >= limit) break;
+                        }
+                        byte b = bytes[i++];
+                        if (escaped) {
+                            escaped = false;
+                        } else if (b == '\\') {
+                            escaped = true;
+                        } else if (b == '"') {
+                            this.pos = i;
+                            return;
+                        }
+                    }
                 } else {
-                    this.buffer.append((char) c);
+                    final char[] block = this.block;
+                    for (; i < limit; i++) {
+                        char c = block[i];
+                        if (escaped) {
+                            escaped = false;
+                        } else if (c == '\\') {
+                            escaped = true;
+                        } else if (c == '"') {
+                            this.pos = i + 1;
+                            return;
+                        }
+                    }
                 }
-            }
-            return this.buffer.toString();
+                this.pos = i;
+            } while (fill());
+            throw unexpectedEof();
         }
-        private char readEscapedChar() throws IOException {
-            char c = expectChar();
-            switch (c) {
-                // Escapes where value == escape
-                case '"':
-                case '\\':
-                case '/':
-                    return c;
-                // Magic escapes where value != escape
-                case 'b':
-                    return '\b';
-                case 'f':
-                    return '\f';
-                case 'n':
-                    return '\n';
-                case 'r':
-                    return '\r';
-                case 't':
-                    return '\t';
-                // Unicode escape (the most magic of all)
-                case 'u': {
-                    String hex = readChars(4);
-                    int val;
-                    try {
-                        val = Integer.parseUnsignedInt(hex, 16);
-                    } catch (NumberFormatException e) {
-                        throw genericError("Invalid hex for unicode escape: " + hex);
+        /**
+         * Skip an entire object or array, by scanning for the matching closing bracket.
+         *
+         * Brackets inside strings are ignored, but otherwise the contents are not validated.
+         *
+         * For UTF-8 input, this classifies each 64 bytes (see {@link ByteClassifier}),
+         * and then only walks the brackets that are outside of strings.
+         * That's faster than walking a {@link StructuralIndex}, which records every token.
+         */
+        private void skipContainer() throws IOException {
+            int depth = 0;
+            boolean inString = false;
+            boolean escaped = false;
+            do {
+                int i = this.pos;
+                final int limit = this.limit;
+                if (bytes != null) {
+                    final byte[] bytes = this.bytes;
+                    final long[] masks = this.masks;
+                    for (; i + 64 <= limit; i += 64) {
+                        ByteClassifier.classify(bytes, i, masks);
+                        long quotes = masks[ByteClassifier.QUOTES];
+                        long backslashes = masks[ByteClassifier.BACKSLASHES];
+                        // Find escaped characters, which follow an unescaped backslash
+                        long escapedChars = 0;
+                        if (escaped) {
+                            escapedChars = 1;
+                            backslashes &= ~1L;
+                        }
+                        escaped = false;
+                        while (backslashes != 0) {
+                            int index = Long.numberOfTrailingZeros(backslashes);
+                            if (index == 63) {
+                                escaped = true;
+                                break;
+                            }
+                            escapedChars |= 2L << index;
+                            // The escaped char can't start another escape
+                            backslashes &= ~(3L << index);
+                        }
+                        // Everything from an unescaped quote up to the next one is inside a string
+                        long strings = Swar.prefixXor(quotes & ~escapedChars);
+                        if (inString) strings = ~strings;
+                        inString = strings < 0;
+                        long structurals = masks[ByteClassifier.STRUCTURALS] & ~strings;
+                        while (structurals != 0) {
+                            int index = Long.numberOfTrailingZeros(structurals);
+                            byte b = bytes[i + index];
+                            if (b == '{' || b == '[') {
+                                depth++;
+                            } else if ((b == '}' || b == ']') && --depth == 0) {
+                                this.pos = i + index + 1;
+                                return;
+                            }
+                            structurals &= structurals - 1;
+                        }
                     }
-                    if (val < 0 || val > Character.MAX_CODE_POINT) {
-                        throw genericError("Invalid code point: " + hex);
+                    // Handle the rest of the block one byte at a time
+                    for (; i < limit; i++) {
+                        byte b = bytes[i];
+                        if (inString) {
+                            if (escaped) {
+                                escaped = false;
+                            } else if (b == '\\') {
+                                escaped = true;
+                            } else if (b == '"') {
+                                inString = false;
+                            }
+                        } else if (b == '"') {
+                            inString = true;
+                        } else if (b == '{' || b == '[') {
+                            depth++;
+                        } else if ((b == '}' || b == ']') && --depth == 0) {
+                            this.pos = i + 1;
+                            return;
+                        }
+                    }
+                } else {
+                    final char[] block = this.block;
+                    for (; i < limit; i++) {
+                        char c = block[i];
+                        if (inString) {
+                            if (escaped) {
+                                escaped = false;
+                            } else if (c == '\\') {
+                                escaped = true;
+                            } else if (c == '"') {
+                                inString = false;
+                            }
+                        } else if (c == '"') {
+                            inString = true;
+                        } else if (c == '{' || c == '[') {
+                            depth++;
+                        } else if ((c == '}' || c == ']') && --depth == 0) {
+                            this.pos = i + 1;
+                            return;
+                        }
                     }
-                    return (char) val;
                 }
-                default:
-                    throw unexpectedChar(c, "Unexpected lookup char");
-            }
+                this.pos = i;
+            } while (fill());
+            throw unexpectedEof();
         }
-        private void expect(char expected) throws IOException {
-            char c = expectChar();
-            if (c != expected) throw unexpectedChar(c, "Expected a `" + expected + "`, but got");
+        /**
+         * Check if the current object or array has another element.
+         *
+         * @return true unless the next token is the end of an object, array or document
+         */
+        public boolean hasNext() throws IOException {
+            JsonToken token = peek();
+            return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY && token != JsonToken.END_DOCUMENT;
         }
-        private char expectChar() throws IOException {
-            int i = this.readChar();
-            if (i < 0) throw this.unexpectedEof();
-            return (char) i;
+        public void beginObject() throws IOException {
+            expectToken(JsonToken.BEGIN_OBJECT);
+            pos++;
+            pushScope(EMPTY_OBJECT);
         }
-        private void pushBack(int c) {
-            if (c < 0) throw new IllegalArgumentException();
-            // This is a logic error on my part. It means we already have push back.
-            if (this.pushBack >= 0) throw new IllegalStateException();
-            this.pushBack = c;
-            this.offset -= 1;
+        public void endObject() throws IOException {
+            expectToken(JsonToken.END_OBJECT);
+            pos++;
+            this.scopeDepth--;
         }
-        public String readChars(int amount) throws IOException {
-            char[] buf = new char[amount];
-            for (int i = 0; i < amount; i++) {
-                buf[i] = expectChar();
-            }
-            return new String(buf);
-
+        public void beginArray() throws IOException {
+            expectToken(JsonToken.BEGIN_ARRAY);
+            pos++;
+            pushScope(EMPTY_ARRAY);
         }
-        private int readChar() throws IOException {
-            int i;
-            if ((i = pushBack) >= 0) {
-                this.pushBack = -1; // "consume" the push back
+        public void endArray() throws IOException {
+            expectToken(JsonToken.END_ARRAY);
+            pos++;
+            this.scopeDepth--;
+        }
+        public String nextName() throws IOException {
+            expectToken(JsonToken.NAME);
+            return nameString();
+        }
+        public String nextString() throws IOException {
+            expectToken(JsonToken.STRING);
+            if (this.strings != null) return (String) cachedString().getValueAsObject();
+            return jsonString();
+        }
+        public boolean nextBoolean() throws IOException {
+            expectToken(JsonToken.BOOLEAN);
+            return (Boolean) readPrimitive(false).getValueAsObject();
+        }
+        public void nextNull() throws IOException {
+            expectToken(JsonToken.NULL);
+            readPrimitive(false);
+        }
+        public double nextDouble() throws IOException {
+            expectToken(JsonToken.NUMBER);
+            if (scanNumber() == LONG_NUMBER) {
+                return this.numberValue;
             } else {
-                i = this.reader.read();
+                return Double.parseDouble(numberText());
             }
-            if (i >= 0) {
-                this.offset += 1;
-            }
-            return i;
         }
-        private JsonSyntaxException unexpectedEof() {
-            return new JsonSyntaxException("Unexpected EOF", this.offset);
+        public long nextLong() throws IOException {
+            expectToken(JsonToken.NUMBER);
+            switch (scanNumber()) {
+                case LONG_NUMBER:
+                    return this.numberValue;
+                case BIG_INTEGER:
+                    throw genericError("Integer is too large");
+                default:
+                    throw genericError("Expected an integer, but got `" + numberText() + "`");
+            }
         }
-        public JsonSyntaxException unexpectedChar(char c, String reason) {
-            return new JsonSyntaxException(reason + ": `" + c + "`", this.offset - 1);
+        /**
+         * Parse the next number exactly, regardless of its size or precision.
+         */
+        public BigDecimal nextBigDecimal() throws IOException {
+            expectToken(JsonToken.NUMBER);
+            if (scanNumber() == LONG_NUMBER) {
+                return BigDecimal.valueOf(this.numberValue);
+            } else {
+                return new BigDecimal(numberText());
+            }
         }
-        public JsonSyntaxException genericError(String msg) {
-            return new JsonSyntaxException(msg, this.offset);
+        public int nextInt() throws IOException {
+            long value = nextLong();
+            if ((int) value != value) throw genericError("Integer is too large");
+            return (int) value;
         }
-        public void expectFinished() throws IOException {
+        /**
+         * Iterate over the elements of the next array, parsing one element at a time.
+         *
+         * Only the current element is kept in memory, so this can read arrays
+         * far larger than the heap (as long as each element fits).
+         * Once the iterator is exhausted, the end of the array has been consumed,
+         * and the parser can continue with whatever follows it.
+         *
+         * Errors are thrown as {@link JsonSyntaxException} and {@link JsonIOException}
+         * by the iterator itself.
+         *
+         * @return an iterator over the elements
+         * @throws JsonSyntaxException if the next value is not an array
+         */
+        public Iterator<JsonValue> iterateArray() throws IOException {
+            beginArray();
+            return new ValueIterator(true);
+        }
+        /**
+         * Stream the elements of the next array, parsing one element at a time.
+         *
+         * @return a sequential stream of the elements
+         * @throws JsonSyntaxException if the next value is not an array
+         * @see #iterateArray()
+         */
+        public Stream<JsonValue> streamArray() throws IOException {
+            return stream(iterateArray());
+        }
+        /**
+         * Iterate over consecutive top-level values, parsing each one as soon as it is complete.
+         *
+         * This allows multiple json values in the same input, like {@code {"a": 1} {"b": 2} 3},
+         * reusing this parser (and its buffers) for all of them.
+         * Values may be separated by whitespace, which is required between numbers.
+         * Values that were already parsed from the document are not repeated.
+         *
+         * @return an iterator over the remaining top-level values
+         * @throws IllegalStateException if the parser is inside an object or array
+         * @see #iterateArray()
+         */
+        public Iterator<JsonValue> iterateValues() {
+            if (this.scopeDepth != 1) throw new IllegalStateException("Not at the top level of the document");
+            if (this.peeked == JsonToken.END_DOCUMENT) this.peeked = null;
+            this.scopes[0] = VALUE_STREAM;
+            return new ValueIterator(false);
+        }
+        /**
+         * Stream consecutive top-level values, parsing each one as soon as it is complete.
+         *
+         * @return a sequential stream of the remaining top-level values
+         * @throws IllegalStateException if the parser is inside an object or array
+         * @see #iterateValues()
+         */
+        public Stream<JsonValue> streamValues() {
+            return stream(iterateValues());
+        }
+        private static Stream<JsonValue> stream(Iterator<JsonValue> values) {
+            Spliterator<JsonValue> spliterator = Spliterators.spliteratorUnknownSize(
+                values,
+                Spliterator.ORDERED | Spliterator.NONNULL
+            );
+            return StreamSupport.stream(spliterator, false);
+        }
+        /**
+         * Parses one value at a time, until the end of the current array or document.
+         */
+        private final class ValueIterator implements Iterator<JsonValue> {
+            /**
+             * Whether to consume the end of an array, after the last value.
+             */
+            private final boolean array;
+            private boolean finished = false;
+
+            private ValueIterator(boolean array) {
+                this.array = array;
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (finished) return false;
+                try {
+                    if (Parser.this.hasNext()) return true;
+                    if (array) endArray();
+                } catch (IOException e) {
+                    throw new JsonIOException(e);
+                }
+                finished = true;
+                return false;
+            }
+
+            @Override
+            public JsonValue next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                try {
+                    return parseValue();
+                } catch (IOException e) {
+                    throw new JsonIOException(e);
+                }
+            }
+        }
+        /**
+         * Parse the next value, but only build the parts selected by one of the specified paths.
+         *
+         * Everything that can't contain a match is skipped using {@link #skipValue()}, without being parsed.
+         * Matches are passed to the action in the order they appear in the input,
+         * with paths relative to the next value (rather than the entire document).
+         * If the match of one path contains the match of another, both are reported.
+         *
+         * @param paths the paths to extract
+         * @param action receives each path and the value it matched
+         * @throws JsonSyntaxException if the value is invalid
+         */
+        public void extract(Collection<JsonPath> paths, BiConsumer<? super JsonPath, ? super JsonValue> action) throws IOException {
+            Objects.requireNonNull(action);
+            extract(List.of(PathNode.compile(paths)), action);
+        }
+        private void extract(List<PathNode> nodes, BiConsumer<? super JsonPath, ? super JsonValue> action) throws IOException {
+            boolean children = false;
+            for (PathNode node : nodes) {
+                if (!node.matches.isEmpty()) {
+                    // Some path ends here, so build the entire value
+                    JsonValue value = parseValue();
+                    for (PathNode other : nodes) {
+                        other.extractFrom(value, action);
+                    }
+                    return;
+                }
+                children |= node.hasChildren();
+            }
+            JsonToken token = this.peeked = beginValue();
+            if (children && token == JsonToken.BEGIN_OBJECT) {
+                beginObject();
+                while (hasNext()) {
+                    String name = nextName();
+                    List<PathNode> matching = null;
+                    for (PathNode node : nodes) {
+                        matching = node.addChildren(name, -1, matching);
+                    }
+                    if (matching != null) {
+                        extract(matching, action);
+                    } else {
+                        skipValue();
+                    }
+                }
+                endObject();
+            } else if (children && token == JsonToken.BEGIN_ARRAY) {
+                beginArray();
+                for (int index = 0; hasNext(); index++) {
+                    List<PathNode> matching = null;
+                    for (PathNode node : nodes) {
+                        matching = node.addChildren(null, index, matching);
+                    }
+                    if (matching != null) {
+                        extract(matching, action);
+                    } else {
+                        skipValue();
+                    }
+                }
+                endArray();
+            } else {
+                // Nothing inside can match
+                this.peeked = null;
+                skipRawValue();
+            }
+        }
+        /**
+         * Parse the next value, passing its contents to the specified handler.
+         *
+         * No {@link JsonValue}s are built, and strings are passed as reusable views,
+         * so this does not allocate for each value.
+         * Nesting is tracked on an explicit stack instead of by recursion.
+         *
+         * @param handler the handler to notify
+         * @throws JsonSyntaxException if the value is invalid
+         */
+        public void parse(JsonHandler handler) throws IOException {
+            Objects.requireNonNull(handler);
+            final int startDepth = this.scopeDepth;
+            JsonToken token = this.peeked = beginValue();
+            while (true) {
+                switch (token) {
+                    case BEGIN_OBJECT:
+                        beginObject();
+                        handler.startObject();
+                        break;
+                    case END_OBJECT:
+                        endObject();
+                        handler.endObject();
+                        break;
+                    case BEGIN_ARRAY:
+                        beginArray();
+                        handler.startArray();
+                        break;
+                    case END_ARRAY:
+                        endArray();
+                        handler.endArray();
+                        break;
+                    case NAME:
+                    case STRING: {
+                        this.peeked = null;
+                        pos++; // opening quote
+                        CharSequence value = stringView();
+                        if (token == JsonToken.NAME) {
+                            handler.key(value);
+                        } else {
+                            handler.string(value);
+                        }
+                        break;
+                    }
+                    case NUMBER:
+                        this.peeked = null;
+                        if (scanNumber() == LONG_NUMBER) {
+                            handler.value(this.numberValue);
+                        } else {
+                            handler.value(Double.parseDouble(numberText()));
+                        }
+                        break;
+                    case BOOLEAN:
+                        handler.value(nextBoolean());
+                        break;
+                    case NULL:
+                        nextNull();
+                        handler.nullValue();
+                        break;
+                    default:
+                        throw new AssertionError(token);
+                }
+                if (this.scopeDepth == startDepth) return;
+                token = peek();
+            }
+        }
+        private void expectToken(JsonToken expected) throws IOException {
+            JsonToken actual = peek();
+            if (actual != expected) {
+                throw genericError("Expected " + expected + ", but got " + actual);
+            }
+            this.peeked = null;
+        }
+        /**
+         * Prepare to parse an entire value, consuming any separators before it.
+         */
+        private JsonToken beginValue() throws IOException {
+            JsonToken token = peek();
+            switch (token) {
+                case END_OBJECT:
+                case END_ARRAY:
+                case END_DOCUMENT:
+                case NAME:
+                    throw genericError("Expected a json value, but got " + token);
+                default:
+                    this.peeked = null;
+                    return token;
+            }
+        }
+        private void pushScope(int scope) {
+            // The document itself is the first scope
+            if (this.scopeDepth > this.maxDepth) throw tooDeep();
+            if (this.scopeDepth == this.scopes.length) {
+                this.scopes = Arrays.copyOf(this.scopes, this.scopes.length * 2);
+            }
+            this.scopes[this.scopeDepth++] = scope;
+        }
+
+        private JsonSyntaxException tooDeep() {
+            return genericError("Exceeded the maximum nesting depth of " + this.maxDepth);
+        }
+
+        //
+        // Value parsing
+        //
+
+        /**
+         * Parse an entire value, without recursion.
+         *
+         * Each object or array is pushed onto an explicit stack when it starts,
+         * and popped (then added to its parent) when it ends.
+         */
+        @SuppressWarnings("unchecked")
+        private JsonValue readValue() throws IOException {
+            // The number of containers opened by this call
+            int depth = 0;
+            JsonValue value;
+            while (true) {
+                // Start parsing the next value
+                skipWhitespace();
+                char c = expectPeekChar();
+                if (c == '{' || c == '[') {
+                    pos++;
+                    if (this.scopeDepth + depth > this.maxDepth) throw tooDeep();
+                    skipWhitespace();
+                    if (peekChar() == (c == '{' ? '}' : ']')) {
+                        pos++;
+                        value = c == '{' ? JsonObject.viewOf(new LinkedHashMap<>()) : JsonArray.viewOf(new ArrayList<>());
+                    } else {
+                        if (depth == this.containers.length) {
+                            this.containers = Arrays.copyOf(this.containers, depth * 2);
+                            this.keys = Arrays.copyOf(this.keys, depth * 2);
+                        }
+                        if (c == '{') {
+                            this.containers[depth] = new LinkedHashMap<String, JsonValue>();
+                            this.keys[depth] = nameString();
+                            skipWhitespace();
+                            expect(':');
+                        } else {
+                            this.containers[depth] = new ArrayList<JsonValue>();
+                        }
+                        depth++;
+                        continue;
+                    }
+                } else {
+                    value = readPrimitive(true);
+                }
+                // Add the value to its container, finishing every container that ends here
+                while (true) {
+                    if (depth == 0) return value;
+                    Object container = this.containers[depth - 1];
+                    skipWhitespace();
+                    c = expectChar();
+                    if (container instanceof Map) {
+                        Map<String, JsonValue> entries = (Map<String, JsonValue>) container;
+                        entries.put(this.keys[depth - 1], value);
+                        if (c == ',') {
+                            this.keys[depth - 1] = nameString();
+                            skipWhitespace();
+                            expect(':');
+                            break;
+                        }
+                        if (c != '}') throw unexpectedChar(c, "Expected either `,` or `}`");
+                        value = JsonObject.viewOf(entries);
+                    } else {
+                        List<JsonValue> elements = (List<JsonValue>) container;
+                        elements.add(value);
+                        if (c == ',') break;
+                        if (c != ']') throw unexpectedChar(c, "Expected either `,` or `]`");
+                        value = JsonArray.viewOf(elements);
+                    }
+                    depth--;
+                    this.containers[depth] = null;
+                    this.keys[depth] = null;
+                }
+            }
+        }
+        private JsonObject readObject() throws IOException {
+            skipWhitespace();
+            char c = expectPeekChar();
+            if (c != '{') {
+                pos++;
+                throw unexpectedChar(c, "Expected a `{`, but got");
+            }
+            return (JsonObject) readValue();
+        }
+        private JsonArray readArray() throws IOException {
+            skipWhitespace();
+            char c = expectPeekChar();
+            if (c != '[') {
+                pos++;
+                throw unexpectedChar(c, "Expected a `[`, but got");
+            }
+            return (JsonArray) readValue();
+        }
+        private JsonPrimitive readPrimitive(boolean expectedAnyValue) throws IOException {
+            skipWhitespace();
+            char c = expectChar();
+            switch (c) {
+                case '"':
+                    pos--;
+                    if (this.strings != null) return cachedString();
+                    return JsonPrimitive.of(jsonString());
+                case 't':
+                    expectNamedConstant(c, "rue");
+                    return JsonPrimitive.of(true);
+                case 'f':
+                    expectNamedConstant(c, "alse");
+                    return JsonPrimitive.of(false);
+                case 'n':
+                    expectNamedConstant(c, "ull");
+                    return JsonPrimitive.NULL;
+                case '-':
+                case '0':
+                case '1':
+                case '2':
+                case '3':
+                case '4':
+                case '5':
+                case '6':
+                case '7':
+                case '8':
+                case '9':
+                    pos--;
+                    return parseNumber();
+                default:
+                    throw unexpectedChar(c, expectedAnyValue ? "Expected a json value" : "Expected a primitive");
+            }
+        }
+        private JsonPrimitive parseNumber() throws IOException {
+            switch (scanNumber()) {
+                case LONG_NUMBER:
+                    return JsonPrimitive.of(this.numberValue);
+                case BIG_INTEGER:
+                    return JsonPrimitive.of(new BigInteger(numberText()));
+                default:
+                    if (this.exactDecimals) return JsonPrimitive.of(new BigDecimal(numberText()));
+                    // Floating point parsing is *REALLY* hard, so I get a pass here
+                    return JsonPrimitive.of(Double.parseDouble(numberText()));
+            }
+        }
+        /**
+         * Scan and validate a number.
+         *
+         * If it is an integer that fits in a long, its value is stored in {@link #numberValue}.
+         * Otherwise the text of the number is available from {@link #numberText()},
+         * until more input is read.
+         *
+         * @return the kind of number
+         */
+        private int scanNumber() throws IOException {
+            /*
+             * Mark the start of the number, so the entire text stays in the block.
+             * That way floating point numbers can be passed to Double.parseDouble
+             * without copying them into the buffer first.
+             */
+            this.mark = this.pos;
+            try {
+                boolean negative = false;
+                int next = expectChar();
+                if (next == '-') {
+                    negative = true;
+                    next = expectChar();
+                }
+                /*
+                 * Accumulate the integer part as a negative number,
+                 * so that Long.MIN_VALUE does not overflow.
+                 */
+                long primaryVal = 0;
+                boolean overflow = false;
+                if (next == '0') {
+                    if (isAsciiDigit(peekChar())) {
+                        throw genericError("JSON does not permit leading zeroes for numbers");
+                    }
+                } else if (isAsciiDigit(next)) {
+                    primaryVal = -(next - '0');
+                    while (isAsciiDigit(next = peekChar())) {
+                        pos++;
+                        if (!overflow) {
+                            /*
+                             * This should be noticeably faster than Long.parseLong because:
+                             * 1. It only supports ASCII characters, avoiding Character.digitValue
+                             * 2. subtractExact/multiplyExact are VM intrinsics
+                             * 3. It reads directly from the block and works in a single pass
+                             */
+                            try {
+                                primaryVal = Math.subtractExact(Math.multiplyExact(primaryVal, 10), next - '0');
+                            } catch (ArithmeticException e) {
+                                overflow = true;
+                            }
+                        }
+                    }
+                } else {
+                    throw unexpectedChar((char) next, "Invalid digit while parsing integer");
+                }
+                boolean integral = true;
+                if (peekChar() == '.') {
+                    pos++;
+                    skipRawDigits();
+                    integral = false;
+                }
+                next = peekChar();
+                if (next == 'e' || next == 'E') {
+                    pos++;
+                    next = peekChar();
+                    if (next == '+' || next == '-') pos++;
+                    skipRawDigits();
+                    integral = false;
+                }
+                // The text stays valid until the next refill, even without the mark
+                this.numberStart = this.mark;
+                if (!integral) {
+                    return FLOAT_NUMBER;
+                } else if (overflow || (!negative && primaryVal == Long.MIN_VALUE)) {
+                    return BIG_INTEGER;
+                } else {
+                    this.numberValue = negative ? primaryVal : -primaryVal;
+                    return LONG_NUMBER;
+                }
+            } finally {
+                this.mark = -1;
+            }
+        }
+        private String numberText() {
+            if (bytes != null) {
+                return new String(bytes, numberStart, pos - numberStart, StandardCharsets.ISO_8859_1);
+            } else {
+                return new String(block, numberStart, pos - numberStart);
+            }
+        }
+        private static boolean isAsciiDigit(int c) {
+            return c >= '0' && c <= '9';
+        }
+        /**
+         * Skip over one or more ASCII digits, without parsing them.
+         */
+        private void skipRawDigits() throws IOException {
+            char c = expectChar();
+            if (!isAsciiDigit(c)) throw unexpectedChar(c, "Invalid digit while parsing number");
+            while (isAsciiDigit(peekChar())) {
+                pos++;
+            }
+        }
+        private void expectNamedConstant(char first, String remaining) throws IOException {
+            for (int i = 0; i < remaining.length(); i++) {
+                int c = readChar();
+                if (c != remaining.charAt(i)) {
+                    String actual = first + remaining.substring(0, i) + (c >= 0 ? String.valueOf((char) c) : "");
+                    throw genericError("Expected `" + first + remaining + "`, but got `" + actual + "`");
+                }
+            }
+        }
+        private static boolean isWhitespace(int c) {
+            return c == ' ' | c == '\n' | c == '\r' | c == '\t';
+        }
+        public void skipWhitespace() throws IOException {
+            do {
+                int i = this.pos;
+                final int limit = this.limit;
+                if (bytes != null) {
+                    byte[] bytes = this.bytes;
+                    if (i < limit && isWhitespace(bytes[i])) {
+                        if (this.index != null) {
+                            this.pos = this.index.nextToken(bytes, i, limit);
+                            return; // Everything is in memory
+                        }
+                        i++;
+                        // Indentation can be long, so skip 8 bytes at a time
+                        while (i + 8 <= limit) {
+                            long found = Swar.nonWhitespace(Swar.read(bytes, i));
+                            if (found != 0) {
+                                i += Swar.firstByte(found);
+                                break;
+                            }
+                            i += 8;
+                        }
+                        while (i < limit && isWhitespace(bytes[i])) i++;
+                    }
+                } else {
+                    char[] block = this.block;
+                    while (i < limit && isWhitespace(block[i])) i++;
+                }
+                this.pos = i;
+                if (i < limit) return;
+            } while (fill());
+        }
+        public String jsonString() throws IOException {
+            skipWhitespace();
+            this.expect('"');
+            return bytes != null ? utf8String() : charString();
+        }
+        /**
+         * Parse the rest of a string from character input.
+         *
+         * Strings without escapes are built directly from the input
+         * (slicing it if it is a {@link String}), keeping the whole string in the block until its end is found.
+         * Otherwise, the runs between escapes are copied into the {@link #buffer} in bulk.
+         */
+        private String charString() throws IOException {
+            this.mark = this.pos;
+            try {
+                int i = this.pos;
+                while (true) {
+                    final char[] block = this.block;
+                    final int limit = this.limit;
+                    while (i < limit) {
+                        char c = block[i];
+                        if (c == '"') {
+                            final int start = this.mark;
+                            this.pos = i + 1;
+                            if (this.text != null) {
+                                return this.text.substring((int) (this.blockOffset + start), (int) (this.blockOffset + i));
+                            }
+                            return new String(block, start, i - start);
+                        } else if (c == '\\') {
+                            clearBuffer();
+                            this.buffer.append(block, this.mark, i - this.mark);
+                            this.pos = i;
+                            this.mark = -1;
+                            appendCharString();
+                            return this.buffer.toString();
+                        }
+                        i++;
+                    }
+                    this.pos = limit;
+                    if (!fill()) throw unexpectedEof();
+                    // Refilling shifts the block contents back to the mark
+                    i -= limit - this.pos;
+                }
+            } finally {
+                this.mark = -1;
+            }
+        }
+        /**
+         * Parse the rest of a string from character input, appending it to the {@link #buffer}.
+         *
+         * Each run of characters up to the next quote or backslash is appended at once.
+         */
+        private void appendCharString() throws IOException {
+            while (true) {
+                final char[] block = this.block;
+                final int limit = this.limit;
+                final int start = this.pos;
+                int i = start;
+                while (i < limit) {
+                    char c = block[i];
+                    if (c == '"' || c == '\\') break;
+                    i++;
+                }
+                this.buffer.append(block, start, i - start);
+                if (i < limit) {
+                    this.pos = i + 1;
+                    if (block[i] == '"') return;
+                    this.buffer.append(readEscapedChar());
+                } else {
+                    this.pos = i;
+                    if (!fill()) throw unexpectedEof();
+                }
+            }
+        }
+        /**
+         * Parse the rest of a string from UTF-8 input.
+         *
+         * The raw bytes are scanned first, and only decoded once the end of the string is known.
+         * Strings without escapes are decoded by a single call to {@link String#String(byte[], int, int, java.nio.charset.Charset)}.
+         * Malformed UTF-8 is replaced with {@code U+FFFD}.
+         */
+        private String utf8String() throws IOException {
+            scanUtf8String();
+            final int end = this.pos - 1;
+            if (!this.stringEscaped) {
+                return new String(this.bytes, this.stringStart, end - this.stringStart, StandardCharsets.UTF_8);
+            }
+            decodeUtf8String(this.stringStart, end);
+            return this.buffer.toString();
+        }
+        /**
+         * Scan the rest of a string from UTF-8 input, without decoding it.
+         *
+         * Afterwards, the raw contents are in the block from {@link #stringStart} up to the closing quote,
+         * until more input is read.
+         */
+        private void scanUtf8String() throws IOException {
+            if (this.index != null) {
+                int end = this.index.stringEnd(this.bytes, this.pos - 1, this.limit);
+                // Strings with escapes or non-ASCII bytes are scanned normally, to find out which they have
+                if (end >= 0) {
+                    this.stringStart = this.pos;
+                    this.pos = end + 1;
+                    this.stringEscaped = false;
+                    this.stringAscii = true;
+                    return;
+                }
+            }
+            // Keep the entire string in the block, even if it needs to be refilled
+            this.mark = this.pos;
+            try {
+                boolean escaped = false;
+                int seen = 0; // All the bytes or-ed together
+                long seenWords = 0; // All the words skipped by SWAR or-ed together
+                int i = this.pos;
+                scanLoop: while (true) {
+                    final byte[] bytes = this.bytes;
+                    final int limit = this.limit;
+                    while (true) {
+                        // Skip 8 bytes at a time, up to the next quote or backslash
+                        while (i + 8 <= limit) {
+                            long word = Swar.read(bytes, i);
+                            long found = Swar.quotesOrBackslashes(word);
+                            if (found != 0) {
+                                int skip = Swar.firstByte(found);
+                                seenWords |= word & ((1L << (skip << 3)) - 1);
+                                i += skip;
+                                break;
+                            }
+                            seenWords |= word;
+                            i += 8;
+                        }
+                        if (i >= limit) break;
+                        byte b = bytes[i++];
+                        seen |= b;
+                        if (b == '"') {
+                            break scanLoop;
+                        } else if (b == '\\') {
+                            escaped = true;
+                            i++; // skip the escaped char, which may be a quote
+                        }
+                    }
+                    this.pos = limit;
+                    if (!fill()) throw unexpectedEof();
+                    // Refilling shifts the block contents back to the mark
+                    i -= limit - this.pos;
+                }
+                this.pos = i;
+                this.stringStart = this.mark;
+                this.stringEscaped = escaped;
+                this.stringAscii = seen >= 0 && (seenWords & Swar.HIGH_BITS) == 0;
+            } finally {
+                this.mark = -1;
+            }
+        }
+        /**
+         * Decode the raw UTF-8 string contents from {@code start} to {@code end} into the {@link #buffer}.
+         *
+         * Afterwards, the position is just past the closing quote.
+         */
+        private void decodeUtf8String(int start, int end) throws IOException {
+            final byte[] bytes = this.bytes;
+            clearBuffer();
+            // Decode runs between escapes, reusing the regular escape handling
+            int runStart = start;
+            this.pos = start;
+            while (this.pos < end) {
+                if (bytes[this.pos] == '\\') {
+                    appendUtf8(runStart, this.pos);
+                    this.pos++;
+                    this.buffer.append(readEscapedChar());
+                    runStart = this.pos;
+                } else {
+                    this.pos++;
+                }
+            }
+            appendUtf8(runStart, end);
+            this.pos = end + 1;
+        }
+        /**
+         * Decode UTF-8 directly into the {@link #buffer}, without any intermediate allocation.
+         *
+         * Malformed sequences are replaced with {@code U+FFFD} the same way as the JDK's decoder,
+         * with one replacement for each maximal prefix of a valid sequence (or a single invalid byte).
+         * That way strings decode the same whether or not they take this path.
+         */
+        private void appendUtf8(int start, int end) {
+            final byte[] bytes = this.bytes;
+            int i = start;
+            while (i < end) {
+                int b = bytes[i] & 0xFF;
+                if (b < 0x80) {
+                    this.buffer.append((char) b);
+                    i++;
+                    continue;
+                }
+                /*
+                 * The range of the second byte excludes overlong encodings and code points past U+10FFFF.
+                 * Like the JDK, surrogates are only rejected once the whole sequence is read.
+                 */
+                int length, lower = 0x80, upper = 0xBF;
+                if (b >= 0xC2 && b <= 0xDF) {
+                    length = 2;
+                } else if (b >= 0xE0 && b <= 0xEF) {
+                    length = 3;
+                    if (b == 0xE0) lower = 0xA0;
+                } else if (b >= 0xF0 && b <= 0xF4) {
+                    length = 4;
+                    if (b == 0xF0) lower = 0x90;
+                    if (b == 0xF4) upper = 0x8F;
+                } else {
+                    length = 1; // Never valid
+                }
+                int codePoint = b & (0xFF >>> (length + 1));
+                int j = 1;
+                while (j < length && i + j < end) {
+                    int continuation = bytes[i + j] & 0xFF;
+                    if (continuation < lower || continuation > upper) break;
+                    codePoint = (codePoint << 6) | (continuation & 0x3F);
+                    lower = 0x80;
+                    upper = 0xBF;
+                    j++;
+                }
+                if (length > 1 && j == length
+                        && (codePoint < Character.MIN_SURROGATE || codePoint > Character.MAX_SURROGATE)) {
+                    this.buffer.appendCodePoint(codePoint);
+                } else {
+                    this.buffer.append('\uFFFD');
+                }
+                i += j;
+            }
+        }
+        /**
+         * Parse the name of an object entry, reusing an existing {@link String} from the symbol table if possible.
+         */
+        private String nameString() throws IOException {
+            SymbolTable symbols = this.symbols;
+            if (symbols == null) return jsonString();
+            skipWhitespace();
+            expect('"');
+            return symbols.intern(stringView());
+        }
+        /**
+         * Parse a string value, reusing an existing {@link JsonPrimitive} from the string cache if possible.
+         */
+        private JsonPrimitive cachedString() throws IOException {
+            skipWhitespace();
+            expect('"');
+            return this.strings.lookup(stringView());
+        }
+        /**
+         * Parse the rest of a string, returning a temporary view of its contents.
+         *
+         * Unlike {@link #jsonString()}, this does not allocate a new {@link String}.
+         * The view is only valid until the parser reads more input.
+         */
+        private CharSequence stringView() throws IOException {
+            if (this.bytes != null) {
+                scanUtf8String();
+                final int end = this.pos - 1;
+                if (!this.stringEscaped && this.stringAscii) {
+                    return this.view.set(this.bytes, this.stringStart, end - this.stringStart);
+                }
+                decodeUtf8String(this.stringStart, end);
+            } else {
+                final char[] block = this.block;
+                final int start = this.pos;
+                final int limit = this.limit;
+                for (int i = start; i < limit; i++) {
+                    char c = block[i];
+                    if (c == '"') {
+                        this.pos = i + 1;
+                        return this.view.set(block, start, i - start);
+                    } else if (c == '\\') {
+                        break;
+                    }
+                }
+                clearBuffer();
+                appendCharString();
+            }
+            return this.buffer;
+        }
+        private char readEscapedChar() throws IOException {
+            char c = expectChar();
+            switch (c) {
+                // Escapes where value == escape
+                case '"':
+                case '\\':
+                case '/':
+                    return c;
+                // Magic escapes where value != escape
+                case 'b':
+                    return '\b';
+                case 'f':
+                    return '\f';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 't':
+                    return '\t';
+                // Unicode escape (the most magic of all)
+                case 'u': {
+                    String hex = readChars(4);
+                    int val;
+                    try {
+                        val = Integer.parseUnsignedInt(hex, 16);
+                    } catch (NumberFormatException e) {
+                        throw genericError("Invalid hex for unicode escape: " + hex);
+                    }
+                    if (val < 0 || val > Character.MAX_CODE_POINT) {
+                        throw genericError("Invalid code point: " + hex);
+                    }
+                    return (char) val;
+                }
+                default:
+                    throw unexpectedChar(c, "Unexpected lookup char");
+            }
+        }
+        private void expect(char expected) throws IOException {
+            char c = expectChar();
+            if (c != expected) throw unexpectedChar(c, "Expected a `" + expected + "`, but got");
+        }
+        private char expectPeekChar() throws IOException {
+            int i = this.peekChar();
+            if (i < 0) throw this.unexpectedEof();
+            return (char) i;
+        }
+        private char expectChar() throws IOException {
+            int i = this.readChar();
+            if (i < 0) throw this.unexpectedEof();
+            return (char) i;
+        }
+        public String readChars(int amount) throws IOException {
+            char[] buf = new char[amount];
+            for (int i = 0; i < amount; i++) {
+                buf[i] = expectChar();
+            }
+            return new String(buf);
+
+        }
+        private int peekChar() throws IOException {
+            if (pos < limit || fill()) {
+                return bytes != null ? bytes[pos] & 0xFF : block[pos];
+            } else {
+                return -1;
+            }
+        }
+        private int readChar() throws IOException {
+            int c = peekChar();
+            if (c >= 0) pos++;
+            return c;
+        }
+        /**
+         * Read the next block of input from the underlying reader.
+         *
+         * Everything before the current position (or the mark, if one is set) is discarded.
+         *
+         * @return true if more input is available, false on EOF
+         */
+        private boolean fill() throws IOException {
+            if (eof) return false;
+            int keep = mark >= 0 ? mark : pos;
+            if (keep > 0) {
+                if (bytes != null) {
+                    System.arraycopy(bytes, keep, bytes, 0, limit - keep);
+                } else {
+                    System.arraycopy(block, keep, block, 0, limit - keep);
+                }
+                blockOffset += keep;
+                pos -= keep;
+                limit -= keep;
+                if (mark >= 0) mark = 0;
+            } else if (bytes != null ? limit == bytes.length : limit == block.length) {
+                // The marked token takes up the entire block
+                if (bytes != null) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                } else {
+                    block = Arrays.copyOf(block, block.length * 2);
+                }
+            }
+            int read;
+            do {
+                if (bytes != null) {
+                    read = input.read(bytes, limit, bytes.length - limit);
+                } else {
+                    read = reader.read(block, limit, block.length - limit);
+                }
+            } while (read == 0);
+            if (read < 0) {
+                eof = true;
+                return false;
+            }
+            limit += read;
+            return true;
+        }
+        private long offset() {
+            return this.blockOffset + this.pos;
+        }
+        private JsonSyntaxException unexpectedEof() {
+            return new JsonSyntaxException("Unexpected EOF", this.offset());
+        }
+        public JsonSyntaxException unexpectedChar(char c, String reason) {
+            return new JsonSyntaxException(reason + ": `" + c + "`", this.offset() - 1);
+        }
+        public JsonSyntaxException genericError(String msg) {
+            return new JsonSyntaxException(msg, this.offset());
+        }
+        /**
+         * Reuse this parser for a range of a different (or reallocated) array of bytes.
+         *
+         * @param blockOffset the offset of the start of the array in the whole input
+         */
+        private void reset(byte[] bytes, long blockOffset, int start, int end) {
+            assert this.input == null && this.bytes != null;
+            this.bytes = bytes;
+            this.blockOffset = blockOffset;
+            reset(start, end);
+        }
+        /**
+         * Reuse this parser for a different range of the bytes already in memory.
+         */
+        private void reset(int start, int end) {
+            assert this.input == null && this.bytes != null;
+            if (this.index != null) this.index.invalidate();
+            this.pos = start;
+            this.limit = end;
+            this.mark = -1;
+            this.peeked = null;
+            this.scopes[0] = EMPTY_DOCUMENT;
+            this.scopeDepth = 1;
+        }
+        public void expectFinished() throws IOException {
+            skipWhitespace();
             int c = this.readChar();
             if (c >= 0) {
-                throw new JsonSyntaxException("Expected EOF, but got " + c, this.offset);
+                throw new JsonSyntaxException("Expected EOF, but got " + (char) c, this.offset() - 1);
+            }
+        }
+    }
+
+    /**
+     * The raw contents of a string in an input retained by {@link LazySource},
+     * which are only unescaped the first time they are needed.
+     */
+    private static final class RawString {
+        /**
+         * The UTF-8 input, or null for character input.
+         */
+        private final byte[] bytes;
+        private final char[] chars;
+        /**
+         * The range of the contents, between the quotes.
+         */
+        private final int start, end;
+        /**
+         * The decoded string, or null if it hasn't been needed yet.
+         *
+         * Strings are immutable, so decoding twice (from racing threads) is harmless.
+         */
+        private String decoded;
+
+        private RawString(Parser source, int start, int end) {
+            this.bytes = source.bytes;
+            this.chars = source.block;
+            this.start = start;
+            this.end = end;
+        }
+
+        private String decoded() {
+            String decoded = this.decoded;
+            if (decoded == null) this.decoded = decoded = decode();
+            return decoded;
+        }
+
+        private String decode() {
+            boolean escaped = false;
+            for (int i = start; i < end && !escaped; i++) {
+                escaped = (bytes != null ? bytes[i] : chars[i]) == '\\';
+            }
+            if (!escaped) {
+                if (bytes != null) return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+                return new String(chars, start, end - start);
+            }
+            // Reuse the regular string parsing, with a parser of our own
+            Parser parser = bytes != null ? new Parser(bytes, start - 1, end - start + 2) : new Parser(chars);
+            parser.pos = start - 1;
+            try {
+                return parser.jsonString();
+            } catch (IOException e) {
+                throw new JsonIOException(e);
+            }
+        }
+
+        private int charAt(int i) {
+            return bytes != null ? bytes[i] & 0xFF : chars[i];
+        }
+
+        /**
+         * Append the (still escaped) contents to the builder, surrounded by quotes.
+         *
+         * Skipping the string only found its end, so this is also where the escapes are checked.
+         *
+         * @return false if the contents contain control characters or invalid escapes,
+         *         so they need to be decoded (and reported) first
+         */
+        private boolean appendVerbatim(StringBuilder builder) {
+            for (int i = start; i < end; i++) {
+                int c = charAt(i);
+                if (c < 0x20) return false;
+                if (c == '\\') {
+                    // The string was skipped, so there is always a character after the backslash
+                    switch (charAt(++i)) {
+                        case '"':
+                        case '\\':
+                        case '/':
+                        case 'b':
+                        case 'f':
+                        case 'n':
+                        case 'r':
+                        case 't':
+                            break;
+                        case 'u':
+                            if (i + 4 >= end) return false;
+                            for (int j = 0; j < 4; j++) {
+                                int hex = charAt(++i);
+                                int letter = hex | 0x20; // Lowercase
+                                if (!Parser.isAsciiDigit(hex) && (letter < 'a' || letter > 'f')) return false;
+                            }
+                            break;
+                        default:
+                            return false;
+                    }
+                }
+            }
+            builder.append('"');
+            if (bytes != null) {
+                builder.append(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+            } else {
+                builder.append(chars, start, end - start);
+            }
+            builder.append('"');
+            return true;
+        }
+    }
+
+    /**
+     * The input shared by all the lazy values from one call to {@link #parseLazy(String)}.
+     *
+     * The entire input is in the parser's block, so any child can be parsed by moving the position.
+     * Parsing is synchronized, so lazy values can be shared between threads.
+     */
+    private static final class LazySource {
+        private final Parser parser;
+
+        private LazySource(Parser parser) {
+            this.parser = parser;
+        }
+
+        /**
+         * Parse the value at the specified position, leaving the parser just past it.
+         */
+        private JsonValue parseAt(int pos) throws IOException {
+            final Parser parser = this.parser;
+            parser.pos = pos;
+            switch (parser.expectPeekChar()) {
+                case '{':
+                    return JsonObject.viewOf(scanObject());
+                case '[':
+                    return JsonArray.viewOf(scanArray());
+                case '"': {
+                    // Only find the end of the string, and decode it once it is needed
+                    int start = ++parser.pos;
+                    parser.skipString();
+                    return new JsonPrimitive(new RawString(parser, start, parser.pos - 1));
+                }
+                default:
+                    return parser.readPrimitive(true);
+            }
+        }
+
+        /**
+         * Scan the entries of an object, parsing the keys but only finding the offsets of the values.
+         */
+        private Map<String, JsonValue> scanObject() throws IOException {
+            final Parser parser = this.parser;
+            parser.expect('{');
+            parser.skipWhitespace();
+            if (parser.peekChar() == '}') {
+                parser.pos++;
+                return Collections.emptyMap();
+            }
+            Map<String, Integer> indexes = new LinkedHashMap<>();
+            int[] offsets = new int[8];
+            int count = 0;
+            while (true) {
+                String key = parser.nameString();
+                parser.skipWhitespace();
+                parser.expect(':');
+                parser.skipWhitespace();
+                if (count == offsets.length) offsets = Arrays.copyOf(offsets, count * 2);
+                offsets[count] = parser.pos;
+                indexes.put(key, count++);
+                parser.skipRawValue();
+                parser.skipWhitespace();
+                char c = parser.expectChar();
+                if (c == '}') break;
+                if (c != ',') throw parser.unexpectedChar(c, "Expected either `,` or `}`");
+                parser.skipWhitespace();
+            }
+            return new LazyMap(new LazyChildren(this, offsets, count), indexes);
+        }
+
+        /**
+         * Scan the elements of an array, only finding their offsets.
+         */
+        private List<JsonValue> scanArray() throws IOException {
+            final Parser parser = this.parser;
+            parser.expect('[');
+            parser.skipWhitespace();
+            if (parser.peekChar() == ']') {
+                parser.pos++;
+                return Collections.emptyList();
+            }
+            int[] offsets = new int[8];
+            int count = 0;
+            while (true) {
+                parser.skipWhitespace();
+                if (count == offsets.length) offsets = Arrays.copyOf(offsets, count * 2);
+                offsets[count++] = parser.pos;
+                parser.skipRawValue();
+                parser.skipWhitespace();
+                char c = parser.expectChar();
+                if (c == ']') break;
+                if (c != ',') throw parser.unexpectedChar(c, "Expected either `,` or `]`");
+            }
+            return new LazyList(new LazyChildren(this, offsets, count));
+        }
+    }
+
+    /**
+     * The children of a lazy object or array, which are parsed the first time they are accessed.
+     */
+    private static final class LazyChildren {
+        private final LazySource source;
+        private final int[] offsets;
+        private final JsonValue[] values;
+
+        private LazyChildren(LazySource source, int[] offsets, int count) {
+            this.source = source;
+            this.offsets = offsets;
+            this.values = new JsonValue[count];
+        }
+
+        private JsonValue get(int index) {
+            synchronized (source) {
+                JsonValue value = values[index];
+                if (value == null) {
+                    try {
+                        value = values[index] = source.parseAt(offsets[index]);
+                    } catch (IOException e) {
+                        throw new JsonIOException(e);
+                    }
+                }
+                return value;
+            }
+        }
+    }
+
+    private static final class LazyMap extends AbstractMap<String, JsonValue> {
+        private final LazyChildren children;
+        /**
+         * The index of the child for each key, in order.
+         */
+        private final Map<String, Integer> indexes;
+
+        private LazyMap(LazyChildren children, Map<String, Integer> indexes) {
+            this.children = children;
+            this.indexes = indexes;
+        }
+
+        @Override
+        public JsonValue get(Object key) {
+            Integer index = indexes.get(key);
+            return index != null ? children.get(index) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexes.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return indexes.size();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return Collections.unmodifiableSet(indexes.keySet());
+        }
+
+        @Override
+        public Set<Map.Entry<String, JsonValue>> entrySet() {
+            return new AbstractSet<Map.Entry<String, JsonValue>>() {
+                @Override
+                public Iterator<Map.Entry<String, JsonValue>> iterator() {
+                    Iterator<Map.Entry<String, Integer>> iter = indexes.entrySet().iterator();
+                    return new Iterator<Map.Entry<String, JsonValue>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iter.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<String, JsonValue> next() {
+                            Map.Entry<String, Integer> entry = iter.next();
+                            return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), children.get(entry.getValue()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return indexes.size();
+                }
+            };
+        }
+    }
+
+    private static final class LazyList extends AbstractList<JsonValue> implements RandomAccess {
+        private final LazyChildren children;
+
+        private LazyList(LazyChildren children) {
+            this.children = children;
+        }
+
+        @Override
+        public JsonValue get(int index) {
+            Objects.checkIndex(index, children.values.length);
+            return children.get(index);
+        }
+
+        @Override
+        public int size() {
+            return children.values.length;
+        }
+    }
+
+    /**
+     * A non-blocking parser, which is fed UTF-8 input as it arrives.
+     *
+     * Instead of blocking on a {@link Reader}, input is pushed with {@link #feed(ByteBuffer)},
+     * and each value can be taken from {@link #poll()} as soon as it is complete.
+     * Only the scanning state is kept between chunks, so no thread is held waiting for input.
+     *
+     * The end of each value is found by tracking nesting depth and strings (which is very cheap).
+     * Then the complete value is parsed directly out of the buffered bytes by a regular {@link Parser}.
+     * To avoid buffering an entire large array, use {@link #arrayElements()}.
+     */
+    public static final class PushParser {
+        private static final int VALUES = 0;
+        private static final int BEFORE_ARRAY = 1;
+        /**
+         * Just after the opening `[`, expecting either an element or `]`.
+         */
+        private static final int FIRST_ELEMENT = 2;
+        /**
+         * Just after a `,`, expecting an element.
+         */
+        private static final int ELEMENT = 3;
+        /**
+         * Just after an element, expecting either `,` or `]`.
+         */
+        private static final int SEPARATOR = 4;
+        private static final int AFTER_ARRAY = 5;
+        private int state;
+        private byte[] buffer = new byte[Parser.BLOCK_SIZE];
+        /**
+         * The start of the input that has not been consumed yet.
+         */
+        private int start = 0;
+        /**
+         * How far the input has been scanned.
+         */
+        private int scanned = 0;
+        /**
+         * The end of the buffered input.
+         */
+        private int end = 0;
+        /**
+         * The number of bytes discarded from the front of the buffer, used for error offsets.
+         */
+        private long discarded = 0;
+        /**
+         * The start of the value that is being scanned, or {@code -1} if between values.
+         */
+        private int valueStart = -1;
+        private int depth = 0;
+        private boolean inString = false;
+        private boolean escaped = false;
+        private boolean endOfInput = false;
+        /**
+         * The parser for complete values, which is reused (along with its symbol table) for each one.
+         */
+        private Parser parser;
+
+        private PushParser(int state) {
+            this.state = state;
+        }
+
+        /**
+         * Create a parser for a stream of whitespace separated json values.
+         *
+         * @return a new parser
+         */
+        public static PushParser values() {
+            return new PushParser(VALUES);
+        }
+
+        /**
+         * Create a parser for a single json array,
+         * which produces each element as soon as it is complete.
+         *
+         * @return a new parser
+         */
+        public static PushParser arrayElements() {
+            return new PushParser(BEFORE_ARRAY);
+        }
+
+        /**
+         * Feed all the remaining bytes of the specified chunk to the parser.
+         *
+         * The bytes are copied, so the chunk can be reused once this returns.
+         *
+         * @param chunk the input to feed
+         * @throws IllegalStateException if {@link #endOfInput()} was already called
+         */
+        public void feed(ByteBuffer chunk) {
+            int amount = chunk.remaining();
+            reserve(amount);
+            chunk.get(this.buffer, this.end, amount);
+            this.end += amount;
+        }
+
+        /**
+         * Feed the specified bytes to the parser.
+         *
+         * @param bytes the array containing the input
+         * @param off the offset of the input
+         * @param len the length of the input
+         * @throws IllegalStateException if {@link #endOfInput()} was already called
+         */
+        public void feed(byte[] bytes, int off, int len) {
+            Objects.checkFromIndexSize(off, len, bytes.length);
+            reserve(len);
+            System.arraycopy(bytes, off, this.buffer, this.end, len);
+            this.end += len;
+        }
+
+        /**
+         * Indicate there will be no more input.
+         *
+         * Any remaining values can still be taken from {@link #poll()}.
+         */
+        public void endOfInput() {
+            this.endOfInput = true;
+        }
+
+        private void reserve(int amount) {
+            if (endOfInput) throw new IllegalStateException("Already reached end of input");
+            if (amount <= this.buffer.length - this.end) return;
+            // Discard consumed input first
+            int consumed = this.start;
+            System.arraycopy(this.buffer, consumed, this.buffer, 0, this.end - consumed);
+            this.discarded += consumed;
+            this.start = 0;
+            this.scanned -= consumed;
+            this.end -= consumed;
+            if (this.valueStart >= 0) this.valueStart -= consumed;
+            if (amount > this.buffer.length - this.end) {
+                this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.end + amount));
+            }
+        }
+
+        /**
+         * Take the next complete value, if there is one.
+         *
+         * After {@link #endOfInput()}, a return value of null means there are no more values.
+         *
+         * @throws JsonSyntaxException if the input is invalid
+         * @return the next value, or null if more input is needed
+         */
+        public JsonValue poll() {
+            final byte[] buffer = this.buffer;
+            while (this.valueStart < 0) {
+                int i = this.scanned;
+                while (i < this.end && Parser.isWhitespace(buffer[i])) i++;
+                this.scanned = this.start = i;
+                if (i >= this.end) {
+                    if (this.endOfInput && this.state != VALUES && this.state != AFTER_ARRAY) {
+                        throw new JsonSyntaxException("Unexpected EOF", this.discarded + i);
+                    }
+                    return null;
+                }
+                byte b = buffer[i];
+                switch (this.state) {
+                    case BEFORE_ARRAY:
+                        if (b != '[') throw unexpectedByte(i, "Expected a `[`");
+                        this.state = FIRST_ELEMENT;
+                        this.scanned = i + 1;
+                        break;
+                    case FIRST_ELEMENT:
+                        if (b == ']') {
+                            this.state = AFTER_ARRAY;
+                            this.scanned = i + 1;
+                        } else {
+                            this.valueStart = i;
+                        }
+                        break;
+                    case VALUES:
+                    case ELEMENT:
+                        this.valueStart = i;
+                        break;
+                    case SEPARATOR:
+                        if (b == ',') {
+                            this.state = ELEMENT;
+                        } else if (b == ']') {
+                            this.state = AFTER_ARRAY;
+                        } else {
+                            throw unexpectedByte(i, "Expected either `,` or `]`");
+                        }
+                        this.scanned = i + 1;
+                        break;
+                    case AFTER_ARRAY:
+                        throw unexpectedByte(i, "Expected EOF");
+                    default:
+                        throw new AssertionError(this.state);
+                }
+            }
+            int valueEnd = scanValue();
+            if (valueEnd < 0) return null;
+            JsonValue value = parseEntirely(parser(this.valueStart, valueEnd));
+            if (this.state != VALUES) this.state = SEPARATOR;
+            this.valueStart = -1;
+            this.depth = 0;
+            this.inString = this.escaped = false;
+            this.scanned = this.start = valueEnd;
+            return value;
+        }
+
+        private Parser parser(int from, int to) {
+            Parser parser = this.parser;
+            if (parser == null) {
+                parser = this.parser = new Parser(this.buffer, from, to - from);
+            }
+            // Report offsets relative to the whole input
+            parser.reset(this.buffer, this.discarded, from, to);
+            return parser;
+        }
+
+        /**
+         * Scan for the end of the value beginning at {@link #valueStart}.
+         *
+         * This only tracks nesting and strings, leaving validation to the {@link Parser}.
+         *
+         * @return the end of the value, or {@code -1} if more input is needed
+         */
+        private int scanValue() {
+            final byte[] buffer = this.buffer;
+            final int end = this.end;
+            final int valueStart = this.valueStart;
+            int depth = this.depth;
+            boolean inString = this.inString;
+            boolean escaped = this.escaped;
+            for (int i = this.scanned; i < end; i++) {
+                byte b = buffer[i];
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        inString = false;
+                        if (depth == 0) return i + 1;
+                    }
+                } else if (depth == 0 && i > valueStart) {
+                    // Must be a scalar (like a number), which ends at the first delimiter
+                    if (isDelimiter(b)) return i;
+                } else {
+                    switch (b) {
+                        case '"':
+                            inString = true;
+                            break;
+                        case '{':
+                        case '[':
+                            depth++;
+                            break;
+                        case '}':
+                        case ']':
+                            // If depth becomes negative, the parser will complain about it
+                            if (--depth <= 0) return i + 1;
+                            break;
+                    }
+                }
+            }
+            // Let the parser report whatever is missing
+            if (this.endOfInput) return end;
+            this.scanned = end;
+            this.depth = depth;
+            this.inString = inString;
+            this.escaped = escaped;
+            return -1;
+        }
+
+        private static boolean isDelimiter(byte b) {
+            switch (b) {
+                case '{':
+                case '}':
+                case '[':
+                case ']':
+                case ',':
+                case ':':
+                case '"':
+                    return true;
+                default:
+                    return Parser.isWhitespace(b);
+            }
+        }
+
+        private JsonSyntaxException unexpectedByte(int index, String reason) {
+            return new JsonSyntaxException(reason + ": `" + (char) (this.buffer[index] & 0xFF) + "`", this.discarded + index);
+        }
+    }
+
+    /**
+     * Adapts a {@link PushParser} to {@link Flow}, parsing a publisher of UTF-8 chunks into json values.
+     *
+     * Backpressure is respected in both directions: a chunk is only requested from upstream
+     * once there is outstanding demand and the previous chunks didn't contain another value.
+     * So at most one chunk (plus any incomplete value) is buffered at a time.
+     *
+     * Chunks are copied when they are parsed, not when they are received,
+     * so they must not be modified once they are published.
+     * Only a single subscriber is supported.
+     */
+    public static final class JsonPublisher implements Flow.Processor<ByteBuffer, JsonValue> {
+        private final PushParser parser;
+        private final Queue<ByteBuffer> chunks = new ConcurrentLinkedQueue<>();
+        private final AtomicLong demand = new AtomicLong();
+        /**
+         * The number of times {@link #drain()} was called, while it was already running.
+         */
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile Flow.Subscription upstream;
+        private volatile Flow.Subscriber<? super JsonValue> downstream;
+        /**
+         * Set once the downstream's onSubscribe has returned, so nothing is signalled before (or during) it.
+         */
+        private volatile boolean subscribed;
+        private volatile boolean upstreamDone;
+        private volatile Throwable upstreamError;
+        private volatile boolean cancelled;
+        /*
+         * Only accessed by drain()
+         */
+        private JsonValue next;
+        private boolean requested;
+        private boolean inputEnded;
+        private boolean done;
+
+        private JsonPublisher(PushParser parser) {
+            this.parser = parser;
+        }
+
+        /**
+         * Create a publisher of whitespace separated json values.
+         *
+         * @return a new publisher
+         * @see PushParser#values()
+         */
+        public static JsonPublisher values() {
+            return new JsonPublisher(PushParser.values());
+        }
+
+        /**
+         * Create a publisher of the elements of a single json array.
+         *
+         * @return a new publisher
+         * @see PushParser#arrayElements()
+         */
+        public static JsonPublisher arrayElements() {
+            return new JsonPublisher(PushParser.arrayElements());
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super JsonValue> subscriber) {
+            Objects.requireNonNull(subscriber);
+            synchronized (this) {
+                if (this.downstream == null) {
+                    this.downstream = subscriber;
+                    subscriber = null;
+                }
+            }
+            if (subscriber != null) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {}
+                    @Override
+                    public void cancel() {}
+                });
+                subscriber.onError(new IllegalStateException("JsonPublisher only supports a single subscriber"));
+                return;
+            }
+            this.downstream.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    if (n <= 0) {
+                        // Fails like an upstream error, but still cancels upstream
+                        upstreamError = new IllegalArgumentException("Non-positive request: " + n);
+                    } else {
+                        demand.getAndAccumulate(n, (current, added) -> {
+                            long sum = current + added;
+                            return sum < 0 ? Long.MAX_VALUE : sum;
+                        });
+                    }
+                    drain();
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                    drain();
+                }
+            });
+            this.subscribed = true;
+            drain();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (this.upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            this.upstream = subscription;
+            drain();
+        }
+
+        @Override
+        public void onNext(ByteBuffer chunk) {
+            chunks.add(chunk);
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.upstreamError = Objects.requireNonNull(error);
+            this.upstreamDone = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            this.upstreamDone = true;
+            drain();
+        }
+
+        /**
+         * Make as much progress as possible, from whichever thread signalled last.
+         *
+         * Only one thread runs the loop at a time, so the subscriber is signalled serially.
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) return;
+            int missed = 1;
+            do {
+                Flow.Subscriber<? super JsonValue> downstream = this.downstream;
+                if (subscribed && !done) {
+                    try {
+                        drainLoop(downstream);
+                    } catch (JsonException e) {
+                        finish();
+                        downstream.onError(e);
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drainLoop(Flow.Subscriber<? super JsonValue> downstream) {
+            while (true) {
+                if (cancelled) {
+                    finish();
+                    return;
+                }
+                Throwable error = this.upstreamError;
+                if (error != null) {
+                    finish();
+                    downstream.onError(error);
+                    return;
+                }
+                if (next == null) {
+                    next = parser.poll();
+                    if (next == null) {
+                        if (inputEnded) {
+                            finish();
+                            downstream.onComplete();
+                            return;
+                        }
+                        ByteBuffer chunk = chunks.poll();
+                        if (chunk != null) {
+                            requested = false;
+                            parser.feed(chunk);
+                            continue;
+                        }
+                        if (upstreamDone) {
+                            parser.endOfInput();
+                            inputEnded = true;
+                            continue;
+                        }
+                        Flow.Subscription upstream = this.upstream;
+                        if (!requested && upstream != null && demand.get() > 0) {
+                            requested = true;
+                            upstream.request(1);
+                        }
+                        return;
+                    }
+                }
+                if (demand.get() == 0) return;
+                demand.decrementAndGet();
+                JsonValue value = next;
+                next = null;
+                downstream.onNext(value);
+            }
+        }
+
+        private void finish() {
+            this.done = true;
+            this.next = null;
+            this.chunks.clear();
+            Flow.Subscription upstream = this.upstream;
+            if (upstream != null && !upstreamDone) upstream.cancel();
+        }
+    }
+
+    /**
+     * Receives the contents of a json value from {@link Parser#parse(JsonHandler)},
+     * in the order they appear in the input.
+     *
+     * The {@link CharSequence}s passed to {@link #key} and {@link #string} are temporary views,
+     * which are only valid until the method returns. Call {@link CharSequence#toString()} to keep them.
+     *
+     * All methods do nothing by default.
+     */
+    public interface JsonHandler {
+        default void startObject() {}
+        default void endObject() {}
+        default void startArray() {}
+        default void endArray() {}
+        /**
+         * The name of the next object entry.
+         *
+         * @param name a temporary view of the name
+         */
+        default void key(CharSequence name) {}
+        /**
+         * A string value.
+         *
+         * @param value a temporary view of the value
+         */
+        default void string(CharSequence value) {}
+        /**
+         * An integer value, which fits in a long.
+         *
+         * @param value the value
+         */
+        default void value(long value) {}
+        /**
+         * Any other numeric value.
+         *
+         * @param value the value
+         */
+        default void value(double value) {}
+        default void value(boolean value) {}
+        default void nullValue() {}
+    }
+
+    /**
+     * A simple <a href="https://goessner.net/articles/JsonPath/">JSONPath</a>,
+     * selecting values to extract with {@link Parser#extract}.
+     *
+     * Paths start with {@code $} (the root value), followed by any number of segments:
+     * <ul>
+     *     <li>{@code .name} or {@code ['name']} select an entry of an object</li>
+     *     <li>{@code [0]} selects an element of an array</li>
+     *     <li>{@code .*} or {@code [*]} select every entry or element</li>
+     * </ul>
+     * Recursive descent ({@code ..}), slices and filters are not supported.
+     */
+    public static final class JsonPath {
+        /**
+         * Matches any entry or element.
+         */
+        private static final Object WILDCARD = new Object() {
+            @Override
+            public String toString() {
+                return "*";
+            }
+        };
+        private final String text;
+        /**
+         * Each segment is either a {@link String} name, an {@link Integer} index, or {@link #WILDCARD}.
+         */
+        private final List<Object> segments;
+
+        private JsonPath(String text, List<Object> segments) {
+            this.text = text;
+            this.segments = segments;
+        }
+
+        /**
+         * Compile the specified path.
+         *
+         * @param path the path, like {@code $.data[*].id}
+         * @throws IllegalArgumentException if the path is invalid or unsupported
+         * @return the compiled path
+         */
+        public static JsonPath compile(String path) {
+            if (!path.startsWith("$")) throw invalidPath(path, "Must start with `$`");
+            List<Object> segments = new ArrayList<>();
+            int i = 1;
+            while (i < path.length()) {
+                char c = path.charAt(i++);
+                if (c == '.') {
+                    int start = i;
+                    while (i < path.length() && path.charAt(i) != '.' && path.charAt(i) != '[') {
+                        i++;
+                    }
+                    String name = path.substring(start, i);
+                    if (name.isEmpty()) throw invalidPath(path, "Expected a name after `.`");
+                    segments.add(name.equals("*") ? WILDCARD : name);
+                } else if (c == '[') {
+                    int end;
+                    char first = i < path.length() ? path.charAt(i) : ']';
+                    if (first == '\'' || first == '"') {
+                        int close = path.indexOf(first, i + 1);
+                        if (close < 0) throw invalidPath(path, "Unterminated name");
+                        segments.add(path.substring(i + 1, close));
+                        end = close + 1;
+                    } else if (first == '*') {
+                        segments.add(WILDCARD);
+                        end = i + 1;
+                    } else {
+                        end = i;
+                        while (end < path.length() && path.charAt(end) >= '0' && path.charAt(end) <= '9') {
+                            end++;
+                        }
+                        if (end == i || end - i > 9) throw invalidPath(path, "Expected an index, name or `*` inside `[]`");
+                        segments.add(Integer.valueOf(path.substring(i, end)));
+                    }
+                    if (end >= path.length() || path.charAt(end) != ']') throw invalidPath(path, "Expected `]`");
+                    i = end + 1;
+                } else {
+                    throw invalidPath(path, "Unexpected `" + c + "`");
+                }
+            }
+            return new JsonPath(path, List.copyOf(segments));
+        }
+
+        private static IllegalArgumentException invalidPath(String path, String reason) {
+            return new IllegalArgumentException(reason + " in JSONPath: " + path);
+        }
+
+        @Override
+        public int hashCode() {
+            return segments.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof JsonPath && ((JsonPath) obj).segments.equals(this.segments);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    /**
+     * Interns the names of object entries, so repeated names share the same {@link String}.
+     *
+     * This is a small open addressing hash table, which is looked up directly from the parser's
+     * input (without allocating), and only allocates a new string for names it hasn't seen before.
+     * The table stops growing once it reaches its maximum size, and long names are never interned,
+     * so unusual input can't make it take up too much memory.
+     *
+     * Tables can be shared between parsers, including parsers on different threads.
+     * Lookups and inserts never block, and an insert that races with another one may just be lost
+     * (which only means the name is allocated again later).
+     *
+     * @see Parser#setSymbolTable(SymbolTable)
+     */
+    public static final class SymbolTable {
+        /**
+         * The default maximum number of names.
+         */
+        public static final int DEFAULT_MAX_SIZE = 4096;
+        /**
+         * Longer names are not worth interning.
+         */
+        private static final int MAX_LENGTH = 64;
+        private static final int INITIAL_CAPACITY = 64;
+        private final int maxSize;
+        /**
+         * The interned names, or null if nothing has been interned yet.
+         *
+         * The capacity is always at least twice the size, so there is always an empty slot.
+         */
+        private String[] table;
+        private int size;
+
+        /**
+         * Create a new table, with the default maximum size.
+         */
+        public SymbolTable() {
+            this(DEFAULT_MAX_SIZE);
+        }
+
+        /**
+         * Create a new table, which holds at most the specified number of names.
+         *
+         * @param maxSize the maximum number of names
+         * @throws IllegalArgumentException if the size is negative
+         */
+        public SymbolTable(int maxSize) {
+            if (maxSize < 0) throw new IllegalArgumentException("Invalid max size: " + maxSize);
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * The number of names in the table.
+         *
+         * @return the size
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Find the string with the specified contents, adding it to the table if possible.
+         */
+        private String intern(CharSequence chars) {
+            int length = chars.length();
+            if (length > MAX_LENGTH) return chars.toString();
+            int hash = hash(chars);
+            String[] table = this.table;
+            if (table != null) {
+                int mask = table.length - 1;
+                int index = spread(hash) & mask;
+                for (int probes = 0; probes < table.length; probes++) {
+                    String entry = table[index];
+                    if (entry == null) break;
+                    if (entry.hashCode() == hash && entry.contentEquals(chars)) return entry;
+                    index = (index + 1) & mask;
+                }
+            }
+            String name = chars.toString();
+            if (this.size < this.maxSize) insert(name, hash);
+            return name;
+        }
+
+        private void insert(String name, int hash) {
+            String[] table = this.table;
+            if (table == null) {
+                table = new String[INITIAL_CAPACITY];
+            } else if ((this.size + 1) * 2 > table.length) {
+                String[] old = table;
+                table = new String[old.length * 2];
+                for (String entry : old) {
+                    if (entry != null) put(table, entry, entry.hashCode());
+                }
+            }
+            if (put(table, name, hash)) this.size++;
+            this.table = table;
+        }
+
+        /**
+         * Compute the same hash as {@link String#hashCode()} (which strings cache), without allocating a string.
+         */
+        private static int hash(CharSequence chars) {
+            int hash = 0;
+            for (int i = 0; i < chars.length(); i++) {
+                hash = 31 * hash + chars.charAt(i);
+            }
+            return hash;
+        }
+
+        /**
+         * Mix the high bits of a hash into the low bits, which are used to index a table.
+         */
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean put(String[] table, String name, int hash) {
+            int mask = table.length - 1;
+            int index = spread(hash) & mask;
+            for (int probes = 0; probes < table.length; probes++) {
+                if (table[index] == null) {
+                    table[index] = name;
+                    return true;
+                }
+                index = (index + 1) & mask;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Shares the {@link String}s (and {@link JsonPrimitive}s) of repeated string values,
+     * like enum constants or identifiers that appear in many records.
+     *
+     * Unlike a {@link SymbolTable}, the values in a document are unbounded,
+     * so the cache has a fixed capacity and evicts values that haven't been used recently.
+     * Each value can only be stored in one small set of entries (chosen by its hash),
+     * and a full set evicts its entries in "clock" order, skipping (once) each entry that was used since the last pass.
+     * Like the symbol table, it is looked up directly from the parser's input,
+     * and long values are never cached.
+     *
+     * Caches can be shared between parsers, including parsers on different threads.
+     * Lookups never block, and racing updates may just lose an entry.
+     *
+     * @see Parser#setStringCache(StringCache)
+     */
+    public static final class StringCache {
+        /**
+         * The default maximum number of values.
+         */
+        public static final int DEFAULT_CAPACITY = 1024;
+        /**
+         * Longer values are unlikely to be repeated.
+         */
+        private static final int MAX_LENGTH = 32;
+        /**
+         * The number of entries each value can be stored in.
+         */
+        private static final int WAYS = 4;
+        private final Entry[] entries;
+        /**
+         * The next entry to consider evicting in each set.
+         */
+        private final byte[] hands;
+
+        /**
+         * Create a new cache, with the default capacity.
+         */
+        public StringCache() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        /**
+         * Create a new cache, which holds at least the specified number of values.
+         *
+         * The capacity is rounded up to a power of two (and at least four),
+         * so {@link #capacity()} may be larger than requested.
+         *
+         * @param capacity the minimum number of values
+         * @throws IllegalArgumentException if the capacity is negative or too large
+         */
+        public StringCache(int capacity) {
+            if (capacity < 0 || capacity > (1 << 30)) throw new IllegalArgumentException("Invalid capacity: " + capacity);
+            int sets = Math.max(Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1) / WAYS, 1);
+            this.entries = new Entry[sets * WAYS];
+            this.hands = new byte[sets];
+        }
+
+        /**
+         * The maximum number of values in the cache.
+         *
+         * @return the capacity
+         */
+        public int capacity() {
+            return entries.length;
+        }
+
+        /**
+         * Find the primitive with the specified contents, adding it to the cache if possible.
+         */
+        private JsonPrimitive lookup(CharSequence chars) {
+            int length = chars.length();
+            if (length > MAX_LENGTH) return JsonPrimitive.of(chars.toString());
+            int hash = SymbolTable.hash(chars);
+            Entry[] entries = this.entries;
+            int set = SymbolTable.spread(hash) & (this.hands.length - 1);
+            int first = set * WAYS;
+            for (int i = first; i < first + WAYS; i++) {
+                Entry entry = entries[i];
+                if (entry != null && entry.hash == hash && entry.string.contentEquals(chars)) {
+                    entry.used = true;
+                    return entry.primitive;
+                }
+            }
+            Entry added = new Entry(chars.toString(), hash);
+            // Advance the clock hand to the first entry that wasn't used since the last pass
+            int hand = this.hands[set];
+            for (int passed = 0; passed < WAYS; passed++) {
+                Entry entry = entries[first + hand];
+                if (entry == null || !entry.used) break;
+                entry.used = false;
+                hand = (hand + 1) % WAYS;
+            }
+            entries[first + hand] = added;
+            this.hands[set] = (byte) ((hand + 1) % WAYS);
+            return added.primitive;
+        }
+
+        private static final class Entry {
+            private final String string;
+            private final JsonPrimitive primitive;
+            private final int hash;
+            /**
+             * If the entry was used since the clock hand last passed it.
+             */
+            private boolean used;
+
+            private Entry(String string, int hash) {
+                this.string = string;
+                this.primitive = JsonPrimitive.of(string);
+                this.hash = hash;
+            }
+        }
+    }
+
+    /**
+     * A trie of the {@link JsonPath}s being extracted by {@link Parser#extract}.
+     */
+    private static final class PathNode {
+        private final Map<String, PathNode> names = new HashMap<>();
+        private final Map<Integer, PathNode> indices = new HashMap<>();
+        private PathNode wildcard;
+        /**
+         * The paths which end at this node.
+         */
+        private final List<JsonPath> matches = new ArrayList<>();
+
+        private static PathNode compile(Collection<JsonPath> paths) {
+            PathNode root = new PathNode();
+            for (JsonPath path : paths) {
+                PathNode node = root;
+                for (Object segment : path.segments) {
+                    if (segment == JsonPath.WILDCARD) {
+                        if (node.wildcard == null) node.wildcard = new PathNode();
+                        node = node.wildcard;
+                    } else if (segment instanceof String) {
+                        node = node.names.computeIfAbsent((String) segment, key -> new PathNode());
+                    } else {
+                        node = node.indices.computeIfAbsent((Integer) segment, key -> new PathNode());
+                    }
+                }
+                node.matches.add(path);
+            }
+            return root;
+        }
+
+        private boolean hasChildren() {
+            return wildcard != null || !names.isEmpty() || !indices.isEmpty();
+        }
+
+        /**
+         * Add the children matching the specified object entry (or array element, if the name is null).
+         *
+         * @return the list of children, or null if it is still empty
+         */
+        private List<PathNode> addChildren(String name, int index, List<PathNode> children) {
+            PathNode child = name != null ? names.get(name) : indices.get(index);
+            if (child != null) {
+                if (children == null) children = new ArrayList<>(2);
+                children.add(child);
+            }
+            if (wildcard != null) {
+                if (children == null) children = new ArrayList<>(2);
+                children.add(wildcard);
+            }
+            return children;
+        }
+
+        /**
+         * Report the matches in an already parsed value.
+         */
+        private void extractFrom(JsonValue value, BiConsumer<? super JsonPath, ? super JsonValue> action) {
+            for (JsonPath path : matches) {
+                action.accept(path, value);
+            }
+            if (!hasChildren()) return;
+            if (value instanceof JsonObject) {
+                for (Map.Entry<String, JsonValue> entry : ((JsonObject) value).asMap().entrySet()) {
+                    List<PathNode> children = addChildren(entry.getKey(), -1, null);
+                    if (children == null) continue;
+                    for (PathNode child : children) {
+                        child.extractFrom(entry.getValue(), action);
+                    }
+                }
+            } else if (value instanceof JsonArray) {
+                List<JsonValue> elements = ((JsonArray) value).asList();
+                for (int i = 0; i < elements.size(); i++) {
+                    List<PathNode> children = addChildren(null, i, null);
+                    if (children == null) continue;
+                    for (PathNode child : children) {
+                        child.extractFrom(elements.get(i), action);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A reusable view of part of a {@link Parser}'s block.
+     */
+    private static final class CharView implements CharSequence {
+        private char[] chars;
+        /**
+         * The block, when it holds ASCII bytes.
+         */
+        private byte[] bytes;
+        private int start;
+        private int length;
+
+        private CharView set(char[] chars, int start, int length) {
+            this.chars = chars;
+            this.bytes = null;
+            this.start = start;
+            this.length = length;
+            return this;
+        }
+
+        private CharView set(byte[] bytes, int start, int length) {
+            this.chars = null;
+            this.bytes = bytes;
+            this.start = start;
+            this.length = length;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            Objects.checkIndex(index, length);
+            return chars != null ? chars[start + index] : (char) (bytes[start + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            Objects.checkFromToIndex(start, end, length);
+            if (chars != null) {
+                return new String(chars, this.start + start, end - start);
+            } else {
+                return new String(bytes, this.start + start, end - start, StandardCharsets.ISO_8859_1);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length).toString();
+        }
+    }
+
+    /**
+     * Splits JSON Lines input at newlines, parsing each line with one reused parser.
+     */
+    private static final class JsonLines implements Spliterator<JsonValue> {
+        /**
+         * Don't split ranges smaller than this, since each split needs its own parser.
+         */
+        private static final int MIN_SPLIT = 8192;
+        private final byte[] bytes;
+        /**
+         * Shared by all the splits
+         */
+        private final SymbolTable symbols;
+        private final int start;
+        private int pos;
+        private final int end;
+        private Parser parser;
+
+        private JsonLines(byte[] bytes, SymbolTable symbols, int start, int pos, int end) {
+            this.bytes = bytes;
+            this.symbols = symbols;
+            this.start = start;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        private int nextLine(int i) {
+            final byte[] bytes = this.bytes;
+            final int end = this.end;
+            while (i < end && bytes[i] != '\n') {
+                i++;
+            }
+            return i;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super JsonValue> action) {
+            while (pos < end) {
+                int lineStart = pos;
+                int lineEnd = nextLine(lineStart);
+                pos = Math.min(lineEnd + 1, end);
+                Parser parser = this.parser;
+                if (parser == null) {
+                    // Offsets are relative to the start of the whole input
+                    parser = this.parser = new Parser(bytes, start, end - start).setSymbolTable(symbols);
+                }
+                parser.reset(lineStart, lineEnd);
+                try {
+                    parser.skipWhitespace();
+                    if (parser.peekChar() < 0) continue; // blank line
+                } catch (IOException e) {
+                    throw new JsonIOException(e);
+                }
+                action.accept(parseEntirely(parser));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<JsonValue> trySplit() {
+            if (end - pos < MIN_SPLIT) return null;
+            int split = nextLine((pos + end) >>> 1);
+            if (split >= end - 1) return null;
+            // The prefix is split off, keeping the encounter order
+            JsonLines prefix = new JsonLines(bytes, symbols, start, pos, split + 1);
+            this.pos = split + 1;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - pos;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
+
+    /**
+     * Opens a parser over part of the input, given as a range of offsets from its start.
+     */
+    @FunctionalInterface
+    private interface ChunkSource {
+        Parser open(long start, long end) throws IOException;
+    }
+
+    /**
+     * Parses a chunk of consecutive array elements, found by {@link #parseArrayParallel}.
+     */
+    // Tasks are inherently Serializable, but these are only ever run in memory (and their source isn't Serializable)
+    @SuppressWarnings("serial")
+    private static final class ArrayChunk extends RecursiveTask<List<JsonValue>> {
+        private final ChunkSource source;
+        private final SymbolTable symbols;
+        private final long start, end;
+        private final int count;
+
+        private ArrayChunk(ChunkSource source, SymbolTable symbols, long start, long end, int count) {
+            this.source = source;
+            this.symbols = symbols;
+            this.start = start;
+            this.end = end;
+            this.count = count;
+        }
+
+        @Override
+        protected List<JsonValue> compute() {
+            try {
+                Parser parser = source.open(start, end).setSymbolTable(symbols);
+                // Report errors relative to the whole input
+                parser.blockOffset += start;
+                // Continue parsing as if we were inside the array
+                parser.pushScope(Parser.EMPTY_ARRAY);
+                List<JsonValue> elements = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    elements.add(parser.parseValue());
+                }
+                parser.expectEnd();
+                return elements;
+            } catch (IOException e) {
+                throw new JsonIOException(e);
+            }
+        }
+    }
+
+    /**
+     * SWAR ("SIMD within a register") helpers, which process 8 bytes at a time as a long.
+     *
+     * These implement the same bitmask tricks as the first stage of simdjson
+     * (classifying 64 bytes into one bit per byte), without needing the incubating vector API.
+     */
+    /* package */ static final class Swar {
+        private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+        private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+        private static final long HIGH_BITS = ~LOW_BITS;
+        private static final long QUOTES = broadcast('"');
+        private static final long BACKSLASHES = broadcast('\\');
+        private static final long CASE_BITS = broadcast(0x20);
+        private static final long OPEN_BRACES = broadcast('{');
+        private static final long CLOSE_BRACES = broadcast('}');
+        private static final long COLONS = broadcast(':');
+        private static final long COMMAS = broadcast(',');
+        private static final long SPACES = broadcast(' ');
+        private static final long NEWLINES = broadcast('\n');
+        private static final long RETURNS = broadcast('\r');
+        private static final long TABS = broadcast('\t');
+
+        private static long broadcast(int b) {
+            return 0x0101010101010101L * b;
+        }
+
+        /**
+         * Read 8 bytes as a little-endian long, so the first byte is the lowest.
+         */
+        private static long read(byte[] bytes, int index) {
+            return (long) LONGS.get(bytes, index);
+        }
+
+        /**
+         * Find the bytes of the word which are zero, setting the high bit of each one.
+         *
+         * Unlike the classic {@code (x - 0x01..) & ~x & 0x80..} trick,
+         * this is exact, without any false positives caused by borrowing.
+         */
+        private static long zeroBytes(long word) {
+            return ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+        }
+
+        /**
+         * Gather the high bit of each byte into the low 8 bits, like {@code pmovmskb}.
+         */
+        private static long movemask(long highBits) {
+            return ((highBits >>> 7) * 0x0102040810204080L) >>> 56;
+        }
+
+        /**
+         * Find the bytes of the word equal to the (broadcast) pattern, returning one bit per byte.
+         */
+        private static long matches(long word, long pattern) {
+            return movemask(zeroBytes(word ^ pattern));
+        }
+
+        /**
+         * Find the quotes and backslashes in the word, setting the high bit of each one.
+         */
+        private static long quotesOrBackslashes(long word) {
+            return zeroBytes(word ^ QUOTES) | zeroBytes(word ^ BACKSLASHES);
+        }
+
+        /**
+         * Find the bytes of the word which are not json whitespace, setting the high bit of each one.
+         */
+        private static long nonWhitespace(long word) {
+            long whitespace = zeroBytes(word ^ SPACES) | zeroBytes(word ^ NEWLINES)
+                | zeroBytes(word ^ RETURNS) | zeroBytes(word ^ TABS);
+            return ~whitespace & HIGH_BITS;
+        }
+
+        /**
+         * The index of the first byte with its high bit set, given a non-zero mask.
+         */
+        private static int firstByte(long highBits) {
+            return Long.numberOfTrailingZeros(highBits) >>> 3;
+        }
+
+        /**
+         * Classify the 64 bytes starting at the specified index, storing one bit per byte in each mask.
+         *
+         * This is the portable implementation of {@link ByteClassifier#classify}.
+         */
+        /* package */ static void classify(byte[] bytes, int index, long[] masks) {
+            long quotes = 0, backslashes = 0, structurals = 0, whitespace = 0, nonAscii = 0;
+            for (int shift = 0; shift < 64; shift += 8) {
+                long word = read(bytes, index + shift);
+                // `[` and `{` (like `]` and `}`) only differ by the case bit
+                long folded = word | CASE_BITS;
+                quotes |= matches(word, QUOTES) << shift;
+                backslashes |= matches(word, BACKSLASHES) << shift;
+                structurals |= movemask(zeroBytes(folded ^ OPEN_BRACES) | zeroBytes(folded ^ CLOSE_BRACES)
+                    | zeroBytes(word ^ COLONS) | zeroBytes(word ^ COMMAS)) << shift;
+                whitespace |= movemask(~nonWhitespace(word) & HIGH_BITS) << shift;
+                nonAscii |= movemask(word & HIGH_BITS) << shift;
+            }
+            masks[ByteClassifier.QUOTES] = quotes;
+            masks[ByteClassifier.BACKSLASHES] = backslashes;
+            masks[ByteClassifier.STRUCTURALS] = structurals;
+            masks[ByteClassifier.WHITESPACE] = whitespace;
+            masks[ByteClassifier.NON_ASCII] = nonAscii;
+        }
+
+        /**
+         * Compute the running xor of all the lower bits.
+         *
+         * Given the positions of quotes, this sets every bit from an opening quote
+         * up to (but not including) its closing quote.
+         */
+        private static long prefixXor(long bits) {
+            bits ^= bits << 1;
+            bits ^= bits << 2;
+            bits ^= bits << 4;
+            bits ^= bits << 8;
+            bits ^= bits << 16;
+            bits ^= bits << 32;
+            return bits;
+        }
+    }
+
+    /**
+     * A structural index of UTF-8 input that is entirely in memory, like the first stage of simdjson.
+     *
+     * The input is indexed one window at a time. Each window is classified 64 bytes at a time by {@link ByteClassifier}
+     * (which uses the Vector API where it is available), and the index records the offset of every byte
+     * outside of strings that can start a token: brackets, colons, commas, quotes (both opening and closing)
+     * and the first byte of every other value. The parser then jumps between these offsets,
+     * instead of examining each byte of whitespace and strings.
+     *
+     * A new window must start at a token boundary (outside of a string),
+     * unless it continues on from the end of the previous window.
+     */
+    private static final class StructuralIndex {
+        private static final int WINDOW_SIZE = 16 * 1024;
+        /**
+         * Set on the closing quote of a string which contains backslashes or non-ASCII bytes,
+         * so it can't be decoded without a closer look.
+         */
+        private static final int SPECIAL_STRING = Integer.MIN_VALUE;
+        private static final int NOT_FOUND = -1;
+        private int[] entries = new int[0];
+        private int count;
+        /**
+         * The index of the next entry, which is where searches start.
+         */
+        private int cursor;
+        /**
+         * The range of offsets in the current window, which is empty if there isn't one.
+         */
+        private int start, end;
+        private final long[] masks = new long[ByteClassifier.MASKS];
+        /**
+         * Holds the final block of the input, padded with spaces.
+         */
+        private final byte[] padding = new byte[64];
+        /*
+         * The state at the end of the current window, for continuing it.
+         */
+        private boolean escaped;
+        private boolean inString;
+        /**
+         * If the last byte was whitespace or a structural character.
+         */
+        private boolean separated;
+        /**
+         * If the string which is still open contains backslashes or non-ASCII bytes.
+         */
+        private boolean specialString;
+
+        private static int offset(int entry) {
+            return entry & ~SPECIAL_STRING;
+        }
+
+        /**
+         * Discard the current window, because the input changed.
+         */
+        private void invalidate() {
+            this.start = this.end = this.count = this.cursor = 0;
+        }
+
+        /**
+         * Find the next token after the whitespace at the specified offset.
+         *
+         * @return the offset of the token, or the limit if there are only whitespace (and invalid bytes) left
+         */
+        private int nextToken(byte[] bytes, int pos, int limit) {
+            int cursor = seek(bytes, pos, limit);
+            while (cursor == count) {
+                // There are no more tokens in this window, so it ends with whitespace
+                if (!next(bytes, limit)) return limit;
+                cursor = 0;
+            }
+            this.cursor = cursor;
+            return offset(entries[cursor]);
+        }
+
+        /**
+         * Find the closing quote of the string starting at the specified (opening) quote.
+         *
+         * @return the entry of the closing quote (including {@link #SPECIAL_STRING}), or {@link #NOT_FOUND}
+         */
+        private int stringEnd(byte[] bytes, int quote, int limit) {
+            int cursor = seek(bytes, quote, limit);
+            // The parser and the index should always agree about where strings start
+            if (cursor == count || entries[cursor] != quote) return NOT_FOUND;
+            cursor++;
+            while (cursor == count) {
+                if (!next(bytes, limit)) return NOT_FOUND;
+                cursor = 0;
+            }
+            this.cursor = cursor + 1;
+            return entries[cursor];
+        }
+
+        /**
+         * Find the first entry at or after the specified offset,
+         * starting a new window there if the current one doesn't include it.
+         */
+        private int seek(byte[] bytes, int pos, int limit) {
+            if (pos < this.start || pos >= this.end) {
+                build(bytes, pos, limit, true);
+                return 0;
+            }
+            final int[] entries = this.entries;
+            final int count = this.count;
+            int cursor = this.cursor;
+            int low = 0, high = count;
+            if (cursor > 0 && offset(entries[cursor - 1]) >= pos) {
+                high = cursor - 1; // Moved backwards
+            } else {
+                // Usually this is only a few entries past the last search
+                for (int steps = 0; cursor < count && steps < 8; cursor++, steps++) {
+                    if (offset(entries[cursor]) >= pos) return cursor;
+                }
+                // Jumped further ahead (like past a skipped container)
+                low = cursor;
+            }
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (offset(entries[mid]) < pos) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Index the window following the current one.
+         *
+         * @return false if the current window reaches the limit
+         */
+        private boolean next(byte[] bytes, int limit) {
+            if (this.end >= limit) return false;
+            build(bytes, this.end, limit, false);
+            return true;
+        }
+
+        private void build(byte[] bytes, int from, int limit, boolean fresh) {
+            if (fresh) {
+                this.escaped = this.inString = this.specialString = false;
+                this.separated = true;
+            }
+            final int end = (int) Math.min(limit, (long) from + WINDOW_SIZE);
+            // Every byte has at most one entry
+            if (this.entries.length < end - from) this.entries = new int[end - from];
+            final int[] entries = this.entries;
+            final long[] masks = this.masks;
+            boolean escaped = this.escaped, inString = this.inString;
+            boolean separated = this.separated, specialString = this.specialString;
+            int count = 0;
+            for (int i = from; i < end; i += 64) {
+                long valid = -1L;
+                if (i + 64 <= end) {
+                    ByteClassifier.classify(bytes, i, masks);
+                } else {
+                    // The window is a multiple of 64 bytes, so this is the end of the input
+                    System.arraycopy(bytes, i, padding, 0, end - i);
+                    Arrays.fill(padding, end - i, 64, (byte) ' ');
+                    ByteClassifier.classify(padding, 0, masks);
+                    valid = (1L << (end - i)) - 1;
+                }
+                // Find escaped characters, which follow an unescaped backslash
+                long backslashes = masks[ByteClassifier.BACKSLASHES];
+                long escapedChars = 0;
+                if (escaped) {
+                    escapedChars = 1;
+                    backslashes &= ~1L;
+                }
+                escaped = false;
+                while (backslashes != 0) {
+                    int bit = Long.numberOfTrailingZeros(backslashes);
+                    if (bit == 63) {
+                        escaped = true;
+                        break;
+                    }
+                    escapedChars |= 2L << bit;
+                    // The escaped char can't start another escape
+                    backslashes &= ~(3L << bit);
+                }
+                long quotes = masks[ByteClassifier.QUOTES] & ~escapedChars;
+                // Everything from an opening quote up to (but not including) its closing quote
+                long strings = Swar.prefixXor(quotes);
+                boolean wasInString = inString;
+                if (inString) strings = ~strings;
+                inString = strings < 0;
+                long structurals = masks[ByteClassifier.STRUCTURALS] & ~strings;
+                long separators = structurals | (masks[ByteClassifier.WHITESPACE] & ~strings);
+                // Other values start with the first byte after whitespace or a structural character
+                long scalars = ((separators << 1) | (separated ? 1 : 0)) & ~(separators | quotes | strings);
+                separated = separators < 0;
+                long special = (masks[ByteClassifier.BACKSLASHES] | masks[ByteClassifier.NON_ASCII]) & strings;
+                long opening = quotes & strings, closing = quotes & ~strings;
+                /*
+                 * Adding the opening quote of a string carries through its contents into its closing quote,
+                 * unless the carry stops early at a special byte (which is clear in the addend).
+                 * A string continuing from the previous block is carried into from the lowest bit.
+                 */
+                long carryIn = wasInString && !specialString ? 1 : 0;
+                long specialStrings = closing & ~((strings & ~special) + (opening | carryIn));
+                if (inString) {
+                    // The string which is still open is the one containing the highest bit
+                    long tail = opening == 0 ? -1L : -Long.highestOneBit(opening);
+                    specialString = (opening == 0 && wasInString && specialString) || (special & tail) != 0;
+                }
+                long tokens = (structurals | quotes | scalars) & valid;
+                while (tokens != 0) {
+                    int bit = Long.numberOfTrailingZeros(tokens);
+                    entries[count++] = (i + bit) | (int) ((specialStrings >>> bit) << 31);
+                    tokens &= tokens - 1;
+                }
+            }
+            this.start = from;
+            this.end = end;
+            this.count = count;
+            this.cursor = 0;
+            this.escaped = escaped;
+            this.inString = inString;
+            this.separated = separated;
+            this.specialString = specialString;
+        }
+    }
+
+    /**
+     * Reads a {@link CharSequence} in bulk.
+     *
+     * Unlike {@link java.io.StringReader}, this is not synchronized.
+     */
+    private static final class CharSequenceInput extends Reader {
+        private final CharSequence text;
+        private int pos = 0;
+
+        private CharSequenceInput(CharSequence text) {
+            this.text = Objects.requireNonNull(text);
+        }
+
+        @Override
+        public int read(char[] dest, int off, int len) {
+            int amount = Math.min(len, text.length() - pos);
+            if (amount <= 0) return -1;
+            if (text instanceof String) {
+                ((String) text).getChars(pos, pos + amount, dest, off);
+            } else if (text instanceof StringBuilder) {
+                ((StringBuilder) text).getChars(pos, pos + amount, dest, off);
+            } else {
+                for (int i = 0; i < amount; i++) {
+                    dest[off + i] = text.charAt(pos + i);
+                }
+            }
+            pos += amount;
+            return amount;
+        }
+
+        @Override
+        public long skip(long n) {
+            int amount = (int) Math.max(Math.min(n, text.length() - pos), 0);
+            pos += amount;
+            return amount;
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    /**
+     * Reads a {@link ByteBuffer} in bulk, without disturbing its position.
+     *
+     * This is a bulk copy into the parser's block, not a view of the buffer.
+     */
+    private static final class ByteBufferInput extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInput(ByteBuffer buffer) {
+            this.buffer = buffer.duplicate();
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] dest, int off, int len) {
+            if (!buffer.hasRemaining()) return -1;
+            int amount = Math.min(len, buffer.remaining());
+            buffer.get(dest, off, amount);
+            return amount;
+        }
+
+        @Override
+        public long skip(long n) {
+            int amount = (int) Math.max(Math.min(n, buffer.remaining()), 0);
+            buffer.position(buffer.position() + amount);
+            return amount;
+        }
+    }
+
+    /**
+     * Reads a file through a series of memory mapped windows.
+     *
+     * A single {@link MappedByteBuffer} is limited to 2 GB,
+     * so larger files are walked one window at a time.
+     * Each window is only mapped once the previous one has been consumed,
+     * and is copied into the parser's block in bulk (see {@link Parser#Parser(ByteBuffer)}).
+     */
+    private static final class MappedFileInput extends InputStream {
+        private static final long WINDOW_SIZE = 1L << 30;
+        private final FileChannel channel;
+        private final long size;
+        /**
+         * The file offset of the end of the current window.
+         */
+        private long windowEnd = 0;
+        private MappedByteBuffer window;
+
+        private MappedFileInput(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        private boolean nextWindow() throws IOException {
+            while (window == null || !window.hasRemaining()) {
+                if (windowEnd >= size) return false;
+                long windowSize = Math.min(WINDOW_SIZE, size - windowEnd);
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowEnd, windowSize);
+                windowEnd += windowSize;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return nextWindow() ? window.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] dest, int off, int len) throws IOException {
+            if (!nextWindow()) return -1;
+            int amount = Math.min(len, window.remaining());
+            window.get(dest, off, amount);
+            return amount;
+        }
+
+        @Override
+        public long skip(long n) {
+            long position = window != null ? windowEnd - window.remaining() : windowEnd;
+            long amount = Math.max(Math.min(n, size - position), 0);
+            if (window != null && amount <= window.remaining()) {
+                window.position(window.position() + (int) amount);
+            } else {
+                // Start mapping again from the new position
+                window = null;
+                windowEnd = position + amount;
             }
+            return amount;
         }
     }
 
@@ -0,0 +1,94 @@
+package net.techcable.tinyjson;
+
+import java.util.Optional;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Classifies 64 bytes of UTF-8 input at a time, for building a structural index.
+ *
+ * This is the Java 21+ implementation from the multi-release jar, using the (incubating) Vector API.
+ * The API is only usable when the application is run with {@code --add-modules jdk.incubator.vector},
+ * so this falls back to SWAR (see {@link TinyJson.Swar}) when the module is missing.
+ * Before Java 21 {@code VectorMask.toLong} isn't reliably intrinsified, which makes the Vector API slower than SWAR.
+ */
+final class ByteClassifier {
+    /*
+     * The masks produced by classify
+     */
+    static final int QUOTES = 0;
+    static final int BACKSLASHES = 1;
+    /**
+     * Brackets, colons and commas.
+     */
+    static final int STRUCTURALS = 2;
+    static final int WHITESPACE = 3;
+    static final int NON_ASCII = 4;
+    static final int MASKS = 5;
+
+    private static final boolean VECTORIZED = detectVectorApi();
+
+    private ByteClassifier() {}
+
+    private static boolean detectVectorApi() {
+        Optional<Module> vectors = ModuleLayer.boot().findModule("jdk.incubator.vector");
+        if (vectors.isEmpty()) return false;
+        // The module descriptor doesn't require the incubator module (it would fail to resolve without the flag)
+        ByteClassifier.class.getModule().addReads(vectors.get());
+        try {
+            return Vectors.isSupported();
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Classify the 64 bytes starting at the specified index, storing one bit per byte in each of the masks.
+     *
+     * @param bytes the input, with at least 64 bytes from the index
+     * @param index the index of the first byte
+     * @param masks the array of {@link #MASKS} masks to store the classification in
+     */
+    static void classify(byte[] bytes, int index, long[] masks) {
+        if (VECTORIZED) {
+            Vectors.classify(bytes, index, masks);
+        } else {
+            TinyJson.Swar.classify(bytes, index, masks);
+        }
+    }
+
+    /**
+     * Holds all references to the Vector API, so they're only linked once we know the module is present.
+     */
+    private static final class Vectors {
+        private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+        static boolean isSupported() {
+            int length = SPECIES.length();
+            return length >= 16 && 64 % length == 0;
+        }
+
+        static void classify(byte[] bytes, int index, long[] masks) {
+            long quotes = 0, backslashes = 0, structurals = 0, whitespace = 0, nonAscii = 0;
+            for (int shift = 0; shift < 64; shift += SPECIES.length()) {
+                ByteVector v = ByteVector.fromArray(SPECIES, bytes, index + shift);
+                // `[` and `{` (like `]` and `}`) only differ by the case bit
+                ByteVector folded = v.or((byte) 0x20);
+                quotes |= v.eq((byte) '"').toLong() << shift;
+                backslashes |= v.eq((byte) '\\').toLong() << shift;
+                structurals |= folded.eq((byte) '{').or(folded.eq((byte) '}'))
+                    .or(v.eq((byte) ':')).or(v.eq((byte) ',')).toLong() << shift;
+                whitespace |= v.eq((byte) ' ').or(v.eq((byte) '\n'))
+                    .or(v.eq((byte) '\r')).or(v.eq((byte) '\t')).toLong() << shift;
+                nonAscii |= v.compare(VectorOperators.LT, (byte) 0).toLong() << shift;
+            }
+            masks[QUOTES] = quotes;
+            masks[BACKSLASHES] = backslashes;
+            masks[STRUCTURALS] = structurals;
+            masks[WHITESPACE] = whitespace;
+            masks[NON_ASCII] = nonAscii;
+        }
+    }
+}
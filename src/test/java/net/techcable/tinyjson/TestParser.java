@@ -0,0 +1,332 @@
+package net.techcable.tinyjson;
+
+import net.techcable.tinyjson.TinyJson.JsonSyntaxException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestParser {
+    private static final String SAMPLE = "{\"name\": \"h\u00e9llo \u2603\", \"escaped\": \"a\\\"b\\n\u00e9\\u0041\","
+            + " \"values\": [1, -2, 3.5e2, true, false, null, {}, []]}";
+
+    @Test
+    public void testBytesMatchString() {
+        byte[] utf8 = SAMPLE.getBytes(StandardCharsets.UTF_8);
+        assertEquals(
+                TinyJson.parseString(SAMPLE),
+                TinyJson.parseBytes(utf8)
+        );
+        byte[] padded = ("xx" + SAMPLE + "yy").getBytes(StandardCharsets.UTF_8);
+        assertEquals(
+                TinyJson.parseString(SAMPLE),
+                TinyJson.parseBytes(padded, 2, utf8.length)
+        );
+    }
+    @Test
+    public void testCharSequence() throws IOException {
+        TinyJson.JsonValue expected = new TinyJson.Parser(new StringReader(SAMPLE)).parseValue();
+        assertEquals(expected, TinyJson.parseString(SAMPLE));
+        assertEquals(expected, new TinyJson.Parser(new StringBuilder(SAMPLE)).parseValue());
+        // Strings longer than a block, with and without escapes
+        String plain = "abc\u00e9".repeat(5000);
+        String escaped = "a\\\"b\\n\\u00e9".repeat(5000);
+        String json = "[\"" + plain + "\", \"" + escaped + "\"]";
+        TinyJson.JsonValue expectedLong = TinyJson.parseBytes(json.getBytes(StandardCharsets.UTF_8));
+        assertEquals(plain, ((TinyJson.JsonPrimitive) ((TinyJson.JsonArray) expectedLong).get(0)).getValueAsObject());
+        assertEquals(expectedLong, new TinyJson.Parser(new StringReader(json)).parseValue());
+        assertEquals(expectedLong, new TinyJson.Parser(new StringBuilder(json)).parseValue());
+        assertEquals(expectedLong, TinyJson.parseString(json));
+    }
+    @Test
+    public void testDirectBuffer() {
+        // Large enough to need several blocks, with strings that straddle them
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            if (i > 0) json.append(',');
+            json.append(SAMPLE).append(",\"").append("\u00e9\\\\".repeat(i % 50)).append('"');
+        }
+        json.append(']');
+        byte[] utf8 = json.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(utf8.length);
+        direct.put(utf8).flip();
+        assertEquals(
+                TinyJson.parseString(json.toString()),
+                TinyJson.parseBuffer(direct)
+        );
+        assertEquals(0, direct.position());
+        assertEquals(
+                TinyJson.parseString(json.toString()),
+                TinyJson.parseBuffer(ByteBuffer.wrap(utf8))
+        );
+    }
+    @Test
+    public void testFile() throws IOException {
+        Path file = Files.createTempFile("tinyjson", ".json");
+        try {
+            Files.write(file, SAMPLE.getBytes(StandardCharsets.UTF_8));
+            assertEquals(
+                    TinyJson.parseString(SAMPLE),
+                    TinyJson.parseFile(file)
+            );
+        } finally {
+            Files.delete(file);
+        }
+    }
+    @Test
+    public void testLazy() {
+        TinyJson.JsonValue expected = TinyJson.parseString(SAMPLE);
+        assertEquals(expected, TinyJson.parseLazy(SAMPLE));
+        byte[] utf8 = SAMPLE.getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected, TinyJson.parseLazy(utf8, 0, utf8.length));
+        // Children are only parsed when they are accessed
+        TinyJson.JsonObject lazy = (TinyJson.JsonObject) TinyJson.parseLazy("{\"ok\": [1, 2], \"bad\": [1, [tru]]}");
+        assertEquals(2, lazy.size());
+        assertEquals(TinyJson.JsonPrimitive.of(2), ((TinyJson.JsonArray) lazy.get("ok")).get(1));
+        TinyJson.JsonArray bad = (TinyJson.JsonArray) lazy.get("bad");
+        assertEquals(TinyJson.JsonPrimitive.of(1), bad.get(0));
+        assertThrows(JsonSyntaxException.class, () -> bad.get(1));
+        assertThrows(JsonSyntaxException.class, () -> TinyJson.parseLazy("{\"a\": [1, 2}"));
+        // Skipped values report the same errors as parsed ones
+        JsonSyntaxException error = assertThrows(JsonSyntaxException.class, () -> TinyJson.parseLazy("[1,]"));
+        assertEquals(
+                assertThrows(JsonSyntaxException.class, () -> TinyJson.parseString("[1,]")).getMessage(),
+                error.getMessage()
+        );
+    }
+    @Test
+    public void testRawStrings() {
+        String json = "[\"a\\/b\\u0041\", \"plain\", \"caf\u00e9 \\\"q\\\"\"]";
+        TinyJson.JsonArray expected = (TinyJson.JsonArray) TinyJson.parseString(json);
+        byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+        for (TinyJson.JsonValue value : List.of(TinyJson.parseLazy(json), TinyJson.parseLazy(utf8, 0, utf8.length))) {
+            TinyJson.JsonArray lazy = (TinyJson.JsonArray) value;
+            // Unchanged strings are serialized with their original escapes
+            assertEquals("\"a\\/b\\u0041\"", lazy.get(0).toString());
+            assertEquals("\"caf\u00e9 \\\"q\\\"\"", lazy.get(2).toString());
+            assertEquals("a/bA", ((TinyJson.JsonPrimitive) lazy.get(0)).getValueAsObject());
+            assertEquals(expected, lazy);
+            assertEquals(expected.hashCode(), lazy.hashCode());
+        }
+        // Invalid escapes are reported instead of being copied
+        for (String invalid : List.of("[\"a\\qb\"]", "[\"\\u12\"]", "[\"\\u12G4\"]")) {
+            TinyJson.JsonValue lazy = TinyJson.parseLazy(invalid);
+            assertThrows(JsonSyntaxException.class, lazy::toString);
+        }
+        assertEquals("[\"\\uaBc9\"]", TinyJson.parseLazy("[\"\\uaBc9\"]").toString());
+        // Strings which weren't parsed are escaped by the serializer
+        assertEquals("\"\\\"a\\\\b\\n\\u0001\"", TinyJson.JsonPrimitive.of("\"a\\b\n\u0001").toString());
+    }
+    @Test
+    public void testParallel() throws IOException {
+        // Several chunks worth of elements
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < 20000; i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(i % 2 == 0 ? SAMPLE : String.valueOf(i));
+        }
+        String json = builder.append(']').toString();
+        byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+        TinyJson.JsonValue expected = TinyJson.parseString(json);
+        assertEquals(expected, TinyJson.parseArrayParallel(utf8, 0, utf8.length, ForkJoinPool.commonPool()));
+        Path file = Files.createTempFile("tinyjson", ".json");
+        try {
+            Files.write(file, utf8);
+            assertEquals(expected, TinyJson.parseFileParallel(file, ForkJoinPool.commonPool()));
+        } finally {
+            Files.delete(file);
+        }
+        assertEquals(TinyJson.JsonArray.empty(), TinyJson.parseArrayParallel(new byte[]{'[', ']'}, 0, 2, ForkJoinPool.commonPool()));
+        // Errors are found by the chunk parsers, not just the splitter
+        int lastNull = json.lastIndexOf("null");
+        byte[] bad = (json.substring(0, lastNull) + "nul!" + json.substring(lastNull + 4)).getBytes(StandardCharsets.UTF_8);
+        assertThrows(JsonSyntaxException.class, () -> TinyJson.parseArrayParallel(bad, 0, bad.length, ForkJoinPool.commonPool()));
+        byte[] notArray = SAMPLE.getBytes(StandardCharsets.UTF_8);
+        assertThrows(JsonSyntaxException.class, () -> TinyJson.parseArrayParallel(notArray, 0, notArray.length, ForkJoinPool.commonPool()));
+    }
+    @Test
+    public void testLines() {
+        StringBuilder builder = new StringBuilder();
+        List<TinyJson.JsonValue> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            String line = i % 3 == 0 ? SAMPLE : "[" + i + "]";
+            expected.add(TinyJson.parseString(line));
+            builder.append(line).append(i % 7 == 0 ? "\r\n\n" : "\n");
+        }
+        byte[] utf8 = builder.toString().getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected, TinyJson.parseLines(utf8, 0, utf8.length).collect(Collectors.toList()));
+        assertEquals(List.of(), TinyJson.parseLines(new byte[]{'\n', ' '}, 0, 2).collect(Collectors.toList()));
+        byte[] bad = "1\n[2,\n3]\n".getBytes(StandardCharsets.UTF_8);
+        assertThrows(JsonSyntaxException.class, () -> TinyJson.parseLines(bad, 0, bad.length).count());
+    }
+    @Test
+    public void testMaxDepth() throws IOException {
+        String deep = "[".repeat(100_000) + "]".repeat(100_000);
+        assertThrows(JsonSyntaxException.class, () -> TinyJson.parseString(deep));
+        // Parsing doesn't recurse, so any depth works
+        TinyJson.JsonValue value = new TinyJson.Parser(deep).setMaxDepth(100_000).parseValue();
+        for (int i = 1; i < 100_000; i++) {
+            value = ((TinyJson.JsonArray) value).get(0);
+        }
+        assertEquals(TinyJson.JsonArray.empty(), value);
+        assertEquals(
+                TinyJson.parseString("[{\"a\": [1]}, []]"),
+                new TinyJson.Parser("[{\"a\": [1]}, []]").setMaxDepth(3).parseValue()
+        );
+        assertThrows(JsonSyntaxException.class, () -> new TinyJson.Parser("[{\"a\": [[]]}]").setMaxDepth(3).parseValue());
+        // The token stream counts towards the same limit
+        TinyJson.Parser parser = new TinyJson.Parser("[[[1]]]").setMaxDepth(2);
+        parser.beginArray();
+        assertThrows(JsonSyntaxException.class, parser::parseValue);
+        assertThrows(IllegalArgumentException.class, () -> new TinyJson.Parser("1").setMaxDepth(0));
+    }
+    private static List<String> keys(TinyJson.JsonValue records) {
+        List<String> keys = new ArrayList<>();
+        for (TinyJson.JsonValue record : ((TinyJson.JsonArray) records).asList()) {
+            keys.addAll(((TinyJson.JsonObject) record).asMap().keySet());
+        }
+        return keys;
+    }
+    @Test
+    public void testSymbolTable() throws IOException {
+        String json = "[{\"id\": 1, \"n\\u00e4me\": 2, \"h\u00e9\": 3}, {\"id\": 4, \"n\u00e4me\": 5, \"h\u00e9\": 6}]";
+        byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+        for (TinyJson.Parser parser : List.of(new TinyJson.Parser(json), new TinyJson.Parser(utf8, 0, utf8.length))) {
+            List<String> keys = keys(parser.parseValue());
+            assertEquals(List.of("id", "n\u00e4me", "h\u00e9", "id", "n\u00e4me", "h\u00e9"), keys);
+            for (int i = 0; i < 3; i++) {
+                assertSame(keys.get(i), keys.get(i + 3));
+            }
+        }
+        List<String> allocated = keys(new TinyJson.Parser(json).setSymbolTable(null).parseValue());
+        assertNotSame(allocated.get(0), allocated.get(3));
+        // Shared between parsers, up to the maximum size
+        TinyJson.SymbolTable symbols = new TinyJson.SymbolTable(2);
+        String first = keys(new TinyJson.Parser(json).setSymbolTable(symbols).parseValue()).get(0);
+        assertSame(first, keys(new TinyJson.Parser(utf8, 0, utf8.length).setSymbolTable(symbols).parseValue()).get(3));
+        assertEquals(2, symbols.size());
+    }
+    @Test
+    public void testStringCache() throws IOException {
+        String json = "[\"ok\", \"caf\u00e9\", \"ok\", \"caf\\u00e9\"]";
+        byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+        for (TinyJson.Parser parser : List.of(new TinyJson.Parser(json), new TinyJson.Parser(utf8, 0, utf8.length))) {
+            TinyJson.JsonArray values = (TinyJson.JsonArray) parser.setStringCache(new TinyJson.StringCache()).parseValue();
+            assertEquals(TinyJson.parseString(json), values);
+            assertSame(values.get(0), values.get(2));
+            assertSame(values.get(1), values.get(3));
+        }
+        TinyJson.JsonArray allocated = (TinyJson.JsonArray) new TinyJson.Parser(json).parseValue();
+        assertNotSame(allocated.get(0), allocated.get(2));
+        // Full caches evict the values that weren't used recently
+        TinyJson.StringCache strings = new TinyJson.StringCache(4);
+        assertEquals(4, strings.capacity());
+        TinyJson.Parser parser = new TinyJson.Parser("[\"a\", \"b\", \"c\", \"d\", \"a\", \"e\", \"a\", \"b\"]").setStringCache(strings);
+        parser.beginArray();
+        List<String> values = new ArrayList<>();
+        while (parser.hasNext()) {
+            values.add(parser.nextString());
+        }
+        assertSame(values.get(0), values.get(6));
+        assertNotSame(values.get(1), values.get(7));
+    }
+    @Test
+    public void testNumbers() throws IOException {
+        String json = "[1, 1700000000000, -9223372036854775808, 9223372036854775808, 0.1, -1.5e300]";
+        byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+        for (TinyJson.Parser parser : List.of(new TinyJson.Parser(json), new TinyJson.Parser(utf8, 0, utf8.length))) {
+            TinyJson.JsonArray values = (TinyJson.JsonArray) parser.parseValue();
+            assertEquals(TinyJson.JsonPrimitive.of(1), values.get(0));
+            assertEquals(TinyJson.JsonPrimitive.of(1700000000000L), values.get(1));
+            assertEquals(Long.MIN_VALUE, ((TinyJson.JsonPrimitive) values.get(2)).getAsLong());
+            assertEquals(TinyJson.JsonPrimitive.of(BigInteger.ONE.shiftLeft(63)), values.get(3));
+            assertEquals(TinyJson.JsonPrimitive.of(0.1), values.get(4));
+            assertEquals(json, values.toString().replace(",", ", ").replace("E", "e"));
+        }
+        TinyJson.JsonArray exact = (TinyJson.JsonArray) new TinyJson.Parser(json).setExactDecimals(true).parseValue();
+        assertEquals(TinyJson.JsonPrimitive.of(new BigDecimal("0.1")), exact.get(4));
+        assertEquals(new BigDecimal("-1.5e300"), ((TinyJson.JsonPrimitive) exact.get(5)).getAsBigDecimal());
+        assertEquals(new BigDecimal("0.1"), ((TinyJson.JsonPrimitive) ((TinyJson.JsonArray) TinyJson.parseString(json)).get(4)).getAsBigDecimal());
+        assertEquals("1700000000000", TinyJson.Serializer.simple().serialize(1700000000000L).toString());
+        // Small values are stored the same way regardless of how they were created
+        assertEquals(TinyJson.JsonPrimitive.of(5), TinyJson.JsonPrimitive.of(BigInteger.valueOf(5)));
+        assertThrows(ArithmeticException.class, () -> ((TinyJson.JsonPrimitive) exact.get(4)).getAsLong());
+        assertThrows(IllegalStateException.class, () -> TinyJson.JsonPrimitive.of("1").getAsLong());
+        TinyJson.Parser parser = new TinyJson.Parser(json);
+        parser.beginArray();
+        parser.nextInt();
+        assertEquals(1700000000000L, parser.nextLong());
+        parser.nextLong();
+        assertEquals(new BigDecimal("9223372036854775808"), parser.nextBigDecimal());
+        assertEquals(new BigDecimal("0.1"), parser.nextBigDecimal());
+    }
+    @Test
+    public void testMalformedUtf8() throws IOException {
+        byte[] malformed = {(byte) 0xE2, (byte) 0x82, 'a', (byte) 0xED, (byte) 0xA0, (byte) 0x80, (byte) 0xF4, (byte) 0x90};
+        String expected = new String(malformed, StandardCharsets.UTF_8);
+        // The same bytes as a key, a plain value and a value with an escape
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        json.write('{');
+        json.write('"');
+        json.write(malformed);
+        json.write("\": \"".getBytes(StandardCharsets.UTF_8));
+        json.write(malformed);
+        json.write("\", \"escaped\": \"\\n".getBytes(StandardCharsets.UTF_8));
+        json.write(malformed);
+        json.write("\"}".getBytes(StandardCharsets.UTF_8));
+        TinyJson.JsonObject object = (TinyJson.JsonObject) TinyJson.parseBytes(json.toByteArray());
+        assertEquals(TinyJson.JsonPrimitive.of(expected), object.get(expected));
+        assertEquals(TinyJson.JsonPrimitive.of("\n" + expected), object.get("escaped"));
+    }
+    @Test
+    public void testStructuralIndex() throws IOException {
+        // Several windows, with strings that straddle both blocks and windows
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            if (i > 0) json.append(",\n  ");
+            json.append("{\"id\": ").append(i).append(", \"name\": \"item\\\\").append("\\\"".repeat(i % 7))
+                    .append("\", \"text\": \"").append("h\u00e9llo [x], {y}: ".repeat(i % 13)).append("\",")
+                    .append(" \"values\": [true,false , null,").append(i * 0.5).append(",\t{}, [ ]]}");
+            if (i % 500 == 0) json.append(", \"").append("long ".repeat(5000)).append('"');
+        }
+        byte[] utf8 = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        TinyJson.JsonValue expected = TinyJson.parseBytes(utf8);
+        assertEquals(expected, new TinyJson.Parser(utf8, 0, utf8.length).setStructuralIndex(true).parseValue());
+        assertEquals(expected, new TinyJson.Parser(ByteBuffer.wrap(utf8)).setStructuralIndex(true).parseValue());
+        // Skipping some values and reading others
+        TinyJson.Parser parser = new TinyJson.Parser(utf8, 0, utf8.length).setStructuralIndex(true);
+        parser.beginArray();
+        for (int i = 0; parser.hasNext(); i++) {
+            if (i % 3 == 0) {
+                parser.skipValue();
+            } else {
+                assertEquals(((TinyJson.JsonArray) expected).get(i), parser.parseValue());
+            }
+        }
+        parser.endArray();
+        parser.expectFinished();
+        assertThrows(JsonSyntaxException.class, () -> new TinyJson.Parser(utf8, 0, utf8.length - 2)
+                .setStructuralIndex(true).parseValue());
+    }
+    @Test
+    public void testBytesErrors() {
+        assertThrows(JsonSyntaxException.class, () -> TinyJson.parseBytes("\"unterminated".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(JsonSyntaxException.class, () -> TinyJson.parseBytes("[1] 2".getBytes(StandardCharsets.UTF_8)));
+    }
+}
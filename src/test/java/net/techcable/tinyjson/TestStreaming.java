@@ -0,0 +1,479 @@
+package net.techcable.tinyjson;
+
+import net.techcable.tinyjson.TinyJson.JsonPath;
+import net.techcable.tinyjson.TinyJson.JsonPublisher;
+import net.techcable.tinyjson.TinyJson.JsonSyntaxException;
+import net.techcable.tinyjson.TinyJson.JsonToken;
+import net.techcable.tinyjson.TinyJson.JsonValue;
+import net.techcable.tinyjson.TinyJson.Parser;
+import net.techcable.tinyjson.TinyJson.PushParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestStreaming {
+    private static List<JsonValue> feedBytewise(PushParser parser, String text) {
+        List<JsonValue> result = new ArrayList<>();
+        JsonValue value;
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            parser.feed(ByteBuffer.wrap(new byte[] {b}));
+            while ((value = parser.poll()) != null) {
+                result.add(value);
+            }
+        }
+        parser.endOfInput();
+        while ((value = parser.poll()) != null) {
+            result.add(value);
+        }
+        return result;
+    }
+
+    @Test
+    public void testTokens() throws IOException {
+        Parser parser = new Parser("{\"id\": 9007199254740993, \"tags\": [\"a\", null, true], \"nested\": {\"x\": [1.5]}, \"empty\": {}}");
+        parser.beginObject();
+        assertEquals("id", parser.nextName());
+        assertEquals(9007199254740993L, parser.nextLong());
+        assertEquals(JsonToken.NAME, parser.peek());
+        assertEquals("tags", parser.nextName());
+        parser.beginArray();
+        assertEquals("a", parser.nextString());
+        assertEquals(JsonToken.NULL, parser.nextToken());
+        assertEquals(true, parser.nextBoolean());
+        assertFalse(parser.hasNext());
+        parser.endArray();
+        assertEquals("nested", parser.nextName());
+        // Mixing tokens and values
+        assertEquals(TinyJson.parseString("{\"x\": [1.5]}"), parser.parseValue());
+        assertEquals(JsonToken.NAME, parser.nextToken());
+        assertEquals(JsonToken.BEGIN_OBJECT, parser.nextToken());
+        assertEquals(JsonToken.END_OBJECT, parser.nextToken());
+        parser.endObject();
+        assertEquals(JsonToken.END_DOCUMENT, parser.peek());
+    }
+    @Test
+    public void testSkipValue() throws IOException {
+        // Long enough to cross several 64-byte chunks, with escapes and brackets inside the strings
+        String padding = "\"" + "[{\\\\}]\\\"".repeat(20) + "\\\\\"";
+        String json = "{\"skip1\": {\"a\": [1, {\"b\": \"}]\\\"\"}]}, \"skip2\": \"\\\"\", \"skip3\": -1.5e3,"
+                + " \"skip4\": null, \"skip6\": [" + padding + ", {\"c\": " + padding + "}], \"skip7\": " + padding + ", \"id\": 7, \"skip5\": [[], {}]}";
+        for (Parser parser : List.of(new Parser(json), new Parser(json.getBytes(StandardCharsets.UTF_8), 0, json.length()))) {
+            parser.beginObject();
+            int id = -1;
+            while (parser.hasNext()) {
+                if (parser.nextName().equals("id")) {
+                    id = parser.nextInt();
+                } else {
+                    parser.skipValue();
+                }
+            }
+            parser.endObject();
+            parser.expectFinished();
+            assertEquals(7, id);
+        }
+        assertThrows(JsonSyntaxException.class, () -> new Parser("[1, [2, 3]").skipValue());
+        assertThrows(JsonSyntaxException.class, () -> new Parser("\"abc\\\"").skipValue());
+    }
+    @Test
+    public void testTokenErrors() {
+        assertThrows(JsonSyntaxException.class, () -> {
+            Parser parser = new Parser("[1 2]");
+            parser.beginArray();
+            parser.nextInt();
+            parser.nextInt();
+        });
+        assertThrows(JsonSyntaxException.class, () -> new Parser("1.5").nextInt());
+        assertThrows(JsonSyntaxException.class, () -> {
+            Parser parser = new Parser("{\"a\" 1}");
+            parser.beginObject();
+            parser.nextName();
+            parser.nextInt();
+        });
+    }
+    private static class RecordingHandler implements TinyJson.JsonHandler {
+        private final StringBuilder events = new StringBuilder();
+
+        @Override
+        public void startObject() {
+            events.append('{');
+        }
+        @Override
+        public void endObject() {
+            events.append('}');
+        }
+        @Override
+        public void startArray() {
+            events.append('[');
+        }
+        @Override
+        public void endArray() {
+            events.append(']');
+        }
+        @Override
+        public void key(CharSequence name) {
+            events.append("key:").append(name).append(' ');
+        }
+        @Override
+        public void string(CharSequence value) {
+            events.append("str:").append(value).append(' ');
+        }
+        @Override
+        public void value(long value) {
+            events.append("long:").append(value).append(' ');
+        }
+        @Override
+        public void value(double value) {
+            events.append("double:").append(value).append(' ');
+        }
+        @Override
+        public void value(boolean value) {
+            events.append(value).append(' ');
+        }
+        @Override
+        public void nullValue() {
+            events.append("null ");
+        }
+    }
+    @Test
+    public void testHandler() throws IOException {
+        String json = "{\"a\": [1, 2.5, \"x\\ny\", \"\u00e9\"], \"b\": {\"c\": null, \"d\": false}, \"e\": []} ";
+        String expected = "{key:a [long:1 double:2.5 str:x\ny str:\u00e9 ]key:b {key:c null key:d false }key:e []}";
+        RecordingHandler handler = new RecordingHandler();
+        Parser parser = new Parser(json);
+        parser.parse(handler);
+        parser.expectFinished();
+        assertEquals(expected, handler.events.toString());
+        handler = new RecordingHandler();
+        new Parser(json.getBytes(StandardCharsets.UTF_8), 0, json.length() + 1).parse(handler);
+        assertEquals(expected, handler.events.toString());
+    }
+    @Test
+    public void testIterateArray() throws IOException {
+        String json = "{\"items\": [1, {\"a\": [2]}, \"three\"], \"after\": true}";
+        Parser parser = new Parser(new StringReader(json));
+        parser.beginObject();
+        assertEquals("items", parser.nextName());
+        Iterator<JsonValue> items = parser.iterateArray();
+        assertEquals(TinyJson.JsonPrimitive.of(1), items.next());
+        assertEquals(TinyJson.parseString("{\"a\": [2]}"), items.next());
+        assertEquals(TinyJson.JsonPrimitive.of("three"), items.next());
+        assertFalse(items.hasNext());
+        // The parser continues after the array
+        assertEquals("after", parser.nextName());
+        assertEquals(true, parser.nextBoolean());
+        parser.endObject();
+        parser.expectFinished();
+        assertEquals(
+                ((TinyJson.JsonArray) TinyJson.parseString("[[], 2, null]")).asList(),
+                new Parser(new StringReader("[[], 2, null]")).streamArray().collect(Collectors.toList())
+        );
+        Iterator<JsonValue> bad = new Parser("[1 2]").iterateArray();
+        bad.next();
+        assertThrows(JsonSyntaxException.class, bad::hasNext);
+        assertThrows(JsonSyntaxException.class, () -> new Parser("{}").iterateArray());
+    }
+    @Test
+    public void testIterateValues() throws IOException {
+        String json = "{\"a\": 1}{\"b\": [2]} 3\n\"four\"[]  ";
+        List<JsonValue> expected = List.of(
+                TinyJson.parseString("{\"a\": 1}"),
+                TinyJson.parseString("{\"b\": [2]}"),
+                TinyJson.JsonPrimitive.of(3),
+                TinyJson.JsonPrimitive.of("four"),
+                TinyJson.JsonArray.empty()
+        );
+        assertEquals(expected, new Parser(new StringReader(json)).streamValues().collect(Collectors.toList()));
+        byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected, new Parser(utf8, 0, utf8.length).streamValues().collect(Collectors.toList()));
+        // Continuing after the first value
+        Parser parser = new Parser(json);
+        parser.parseValue();
+        assertEquals(expected.subList(1, expected.size()), parser.streamValues().collect(Collectors.toList()));
+        assertFalse(new Parser("  ").iterateValues().hasNext());
+        Iterator<JsonValue> bad = new Parser("1 ]").iterateValues();
+        bad.next();
+        assertThrows(JsonSyntaxException.class, bad::next);
+    }
+    @Test
+    public void testExtract() throws IOException {
+        String json = "{\"data\": [{\"id\": 1, \"skip\": [\"]\"]}, {\"id\": \"two\"}, {}], \"other\": {\"id\": 3},"
+                + " \"meta\": {\"cursor\": \"abc\", \"size\": [5, 6]}}";
+        List<JsonPath> paths = List.of(
+                JsonPath.compile("$.data[*].id"),
+                JsonPath.compile("$.meta.cursor"),
+                JsonPath.compile("$['meta']"),
+                JsonPath.compile("$.meta.size[1]")
+        );
+        for (Parser parser : List.of(new Parser(json), new Parser(json.getBytes(StandardCharsets.UTF_8), 0, json.length()))) {
+            List<String> found = new ArrayList<>();
+            parser.extract(paths, (path, value) -> found.add(path + "=" + value.toString()));
+            parser.expectFinished();
+            assertEquals(List.of(
+                    "$.data[*].id=" + TinyJson.JsonPrimitive.of(1),
+                    "$.data[*].id=" + TinyJson.JsonPrimitive.of("two"),
+                    "$['meta']=" + TinyJson.parseString("{\"cursor\": \"abc\", \"size\": [5, 6]}"),
+                    "$.meta.cursor=" + TinyJson.JsonPrimitive.of("abc"),
+                    "$.meta.size[1]=" + TinyJson.JsonPrimitive.of(6)
+            ), found);
+        }
+        assertEquals(JsonPath.compile("$.a[*]"), JsonPath.compile("$['a'].*"));
+        assertThrows(IllegalArgumentException.class, () -> JsonPath.compile("data.id"));
+        assertThrows(IllegalArgumentException.class, () -> JsonPath.compile("$..id"));
+        assertThrows(IllegalArgumentException.class, () -> JsonPath.compile("$.a[1"));
+        assertThrows(JsonSyntaxException.class, () -> new Parser("{\"a\": [1}").extract(List.of(JsonPath.compile("$.b")), (path, value) -> {}));
+    }
+    @Test
+    public void testCheckpoint() throws IOException {
+        String json = "{\"header\": 1, \"items\": [\"a\", {\"b\": [2]}, 3, \"\u00e9\", [], 6], \"footer\": null}";
+        byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+        List<Supplier<Parser>> sources = List.of(
+                () -> new Parser(json),
+                () -> new Parser(new StringReader(json)),
+                () -> new Parser(utf8, 0, utf8.length),
+                () -> new Parser(ByteBuffer.allocateDirect(utf8.length).put(utf8).flip())
+        );
+        for (Supplier<Parser> source : sources) {
+            Parser parser = source.get();
+            parser.beginObject();
+            parser.nextName();
+            parser.nextInt();
+            assertEquals("items", parser.nextName());
+            parser.beginArray();
+            parser.parseValue();
+            parser.parseValue();
+            Parser.Checkpoint checkpoint = parser.checkpoint();
+            assertEquals(2, checkpoint.getDepth());
+            List<JsonValue> rest = new ArrayList<>();
+            while (parser.hasNext()) rest.add(parser.parseValue());
+            // Checkpoints can also be taken after peeking
+            Parser.Checkpoint end = parser.checkpoint();
+
+            Parser resumed = source.get();
+            resumed.restore(checkpoint);
+            List<JsonValue> resumedRest = new ArrayList<>();
+            while (resumed.hasNext()) resumedRest.add(resumed.parseValue());
+            assertEquals(rest, resumedRest);
+            resumed.endArray();
+            assertEquals("footer", resumed.nextName());
+            resumed.nextNull();
+            resumed.endObject();
+            resumed.expectFinished();
+
+            Parser atEnd = source.get();
+            atEnd.restore(end);
+            atEnd.endArray();
+            assertThrows(IllegalStateException.class, () -> atEnd.restore(end));
+        }
+        Path file = Files.createTempFile("tinyjson", ".json");
+        try (FileChannel channel = FileChannel.open(Files.write(file, utf8), StandardOpenOption.READ)) {
+            Parser parser = new Parser(channel);
+            parser.beginObject();
+            parser.nextName();
+            parser.nextInt();
+            Parser.Checkpoint checkpoint = parser.checkpoint();
+            Parser resumed = new Parser(channel);
+            resumed.restore(checkpoint);
+            assertEquals("items", resumed.nextName());
+            assertEquals(TinyJson.parseString(json.substring(json.indexOf('['), json.lastIndexOf(']') + 1)), resumed.parseValue());
+            assertThrows(IllegalArgumentException.class, () -> new Parser(json).restore(checkpoint));
+        } finally {
+            Files.delete(file);
+        }
+    }
+    @Test
+    public void testPushValues() {
+        assertEquals(
+                List.of(
+                        TinyJson.parseString("{\"a\": [1, \"]\\\"\"]}"),
+                        TinyJson.parseString("12"),
+                        TinyJson.parseString("\"str\""),
+                        TinyJson.parseString("[]"),
+                        TinyJson.parseString("-3.5")
+                ),
+                feedBytewise(PushParser.values(), " {\"a\": [1, \"]\\\"\"]} 12\"str\"[]\n-3.5")
+        );
+    }
+    @Test
+    public void testPushArrayElements() {
+        assertEquals(
+                List.of(
+                        TinyJson.parseString("{\"a\": 1}"),
+                        TinyJson.parseString("\"x,y\""),
+                        TinyJson.parseString("[2, [3]]"),
+                        TinyJson.parseString("true")
+                ),
+                feedBytewise(PushParser.arrayElements(), " [ {\"a\": 1}, \"x,y\" ,[2, [3]],true ] ")
+        );
+        assertEquals(List.of(), feedBytewise(PushParser.arrayElements(), "[ ]"));
+    }
+    @Test
+    public void testPushErrors() {
+        assertThrows(JsonSyntaxException.class, () -> feedBytewise(PushParser.values(), "{\"a\": "));
+        assertThrows(JsonSyntaxException.class, () -> feedBytewise(PushParser.arrayElements(), "[1, 2"));
+        assertThrows(JsonSyntaxException.class, () -> feedBytewise(PushParser.arrayElements(), "[1, ]"));
+        assertThrows(JsonSyntaxException.class, () -> feedBytewise(PushParser.arrayElements(), "[1] 2"));
+        PushParser parser = PushParser.values();
+        parser.feed(ByteBuffer.wrap("[1, 2".getBytes(StandardCharsets.UTF_8)));
+        assertNull(parser.poll());
+    }
+    @Test
+    public void testPushReusesBuffer() {
+        // Large enough to reallocate the buffer, with errors reported relative to the whole input
+        String json = "[\"" + "x".repeat(100_000) + "\", {\"a\": 1}, {\"a\": 2}, {\"a\": tru}]";
+        byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+        PushParser parser = PushParser.arrayElements();
+        List<JsonValue> values = new ArrayList<>();
+        JsonSyntaxException error = assertThrows(JsonSyntaxException.class, () -> {
+            for (int i = 0; i < utf8.length; i += 1000) {
+                parser.feed(utf8, i, Math.min(1000, utf8.length - i));
+                JsonValue value;
+                while ((value = parser.poll()) != null) values.add(value);
+            }
+        });
+        assertEquals(3, values.size());
+        assertEquals(TinyJson.parseString("{\"a\": 2}"), values.get(2));
+        assertEquals(
+                assertThrows(JsonSyntaxException.class, () -> TinyJson.parseBytes(utf8)).getMessage(),
+                error.getMessage()
+        );
+    }
+    /**
+     * Publishes each chunk synchronously, as soon as it is requested.
+     */
+    private static final class ChunkPublisher implements Flow.Publisher<ByteBuffer> {
+        private final List<String> chunks;
+        private int requested = 0;
+
+        private ChunkPublisher(String... chunks) {
+            this.chunks = List.of(chunks);
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                private int index = 0;
+
+                @Override
+                public void request(long n) {
+                    requested += n;
+                    while (n-- > 0 && index < chunks.size()) {
+                        subscriber.onNext(ByteBuffer.wrap(chunks.get(index++).getBytes(StandardCharsets.UTF_8)));
+                    }
+                    if (index == chunks.size()) subscriber.onComplete();
+                }
+
+                @Override
+                public void cancel() {}
+            });
+        }
+    }
+    private static class RecordingSubscriber implements Flow.Subscriber<JsonValue> {
+        private final List<JsonValue> values = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private Throwable error;
+        private boolean complete;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(JsonValue item) {
+            values.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            this.complete = true;
+        }
+    }
+    @Test
+    public void testPublisher() {
+        ChunkPublisher chunks = new ChunkPublisher("[1, {\"a\"", ": [2]}, ", "\"three\"", "]");
+        JsonPublisher publisher = JsonPublisher.arrayElements();
+        chunks.subscribe(publisher);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        assertEquals(0, chunks.requested);
+        subscriber.subscription.request(1);
+        assertEquals(List.of(TinyJson.JsonPrimitive.of(1)), subscriber.values);
+        // Only enough input for the first element was requested
+        assertEquals(1, chunks.requested);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals(List.of(
+                TinyJson.JsonPrimitive.of(1),
+                TinyJson.parseString("{\"a\": [2]}"),
+                TinyJson.JsonPrimitive.of("three")
+        ), subscriber.values);
+        assertTrue(subscriber.complete);
+        assertNull(subscriber.error);
+
+        JsonPublisher invalid = JsonPublisher.values();
+        new ChunkPublisher("1 ", "]").subscribe(invalid);
+        RecordingSubscriber failed = new RecordingSubscriber();
+        invalid.subscribe(failed);
+        failed.subscription.request(10);
+        assertEquals(List.of(TinyJson.JsonPrimitive.of(1)), failed.values);
+        assertTrue(failed.error instanceof JsonSyntaxException);
+        assertFalse(failed.complete);
+    }
+    @Test
+    public void testPublisherConcurrentUpstream() {
+        JsonPublisher publisher = JsonPublisher.values();
+        StringBuilder log = new StringBuilder();
+        publisher.subscribe(new RecordingSubscriber() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                log.append("onSubscribe-start;");
+                // Upstream signals from another thread must wait until this returns
+                Thread upstream = new Thread(() -> {
+                    publisher.onSubscribe(new Flow.Subscription() {
+                        @Override
+                        public void request(long n) {}
+                        @Override
+                        public void cancel() {}
+                    });
+                    publisher.onComplete();
+                });
+                upstream.start();
+                try {
+                    upstream.join();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                log.append("onSubscribe-end;");
+            }
+
+            @Override
+            public void onComplete() {
+                log.append("onComplete;");
+            }
+        });
+        assertEquals("onSubscribe-start;onSubscribe-end;onComplete;", log.toString());
+    }
+}